@@ -0,0 +1,29 @@
+package com.businessadmin.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content addressed storage for uploaded files. Blobs are keyed by the SHA-256 of their content,
+ * so identical files are only stored once.
+ */
+public interface BlobStore {
+
+    /**
+     * Opens a writer for a new blob. The content is hashed while it is written and only becomes
+     * visible once {@link BlobWriter#commit()} is called; closing an uncommitted writer discards it.
+     *
+     * @return The blob writer
+     * @throws IOException If the blob could not be created
+     */
+    BlobWriter openWriter() throws IOException;
+
+    /**
+     * Opens a stored blob for reading.
+     *
+     * @param location Location returned when the blob was committed
+     * @return Stream of the blob content
+     * @throws IOException If the blob could not be read
+     */
+    InputStream open(String location) throws IOException;
+}
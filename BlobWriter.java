@@ -0,0 +1,19 @@
+package com.businessadmin.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream writing a single blob to a {@link BlobStore}.
+ */
+public abstract class BlobWriter extends OutputStream {
+
+    /**
+     * Completes the blob. If a blob with the same content already exists the new copy is dropped
+     * and the existing blob is returned.
+     *
+     * @return The stored blob
+     * @throws IOException If the blob could not be stored
+     */
+    public abstract StoredBlob commit() throws IOException;
+}
@@ -0,0 +1,73 @@
+package com.businessadmin.util;
+
+/**
+ * Bloom filter over rows of string values, sized for an expected number of entries and false positive rate.
+ * The bit positions are derived from the two halves of the 128-bit row hash of {@link RowDuplicateDetector}
+ * by double hashing. A negative answer is exact, a positive one may be wrong with the configured rate.
+ */
+public final class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private long entries;
+
+    /**
+     * @param expectedEntries   Number of entries the filter is sized for
+     * @param falsePositiveRate Rate of false positives at the expected number of entries, e.g. 0.01
+     */
+    public BloomFilter(long expectedEntries, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long n = Math.max(1, expectedEntries);
+        long optimalBits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (LN2 * LN2));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) >>> 6));
+        this.bits = new long[words];
+        this.bitCount = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * LN2));
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param values Values of the row
+     * @param width  Number of leading values that make up the entry
+     */
+    public void put(String[] values, int width) {
+        long h1 = RowDuplicateDetector.hashHigh(values, width);
+        long h2 = RowDuplicateDetector.hashLow(values, width);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+        entries++;
+    }
+
+    /**
+     * @param values Values of the row
+     * @param width  Number of leading values that make up the entry
+     * @return false if the row was certainly never added
+     */
+    public boolean mightContain(String[] values, int width) {
+        long h1 = RowDuplicateDetector.hashHigh(values, width);
+        long h2 = RowDuplicateDetector.hashLow(values, width);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+}
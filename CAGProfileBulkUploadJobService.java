@@ -0,0 +1,216 @@
+package com.businessadmin.service.impl;
+
+import com.businessadmin.exception.CustomApplicationException;
+import com.businessadmin.request.common.model.SearchInputMetaData;
+import com.businessadmin.response.cagProfileDetails.CAGProfileBulkUploadResponse;
+import com.businessadmin.response.cagProfileDetails.CAGProfileUploadJobResponse;
+import com.businessadmin.response.common.model.ErrorResponse;
+import com.businessadmin.util.UploadFingerprint;
+import com.businessadmin.util.UploadPhase;
+import com.businessadmin.util.UploadProgress;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs CAG profile bulk uploads in the background. The uploaded file is spooled to disk and a job id
+ * is returned right away; the file is then processed on the bounded upload job executor and its
+ * progress can be polled with the job id by the user who submitted it. A finished job keeps only the
+ * summary of its result and is dropped once cag.bulk-upload.jobs.retention-minutes have passed.
+ */
+@Service
+public class CAGProfileBulkUploadJobService {
+
+    private final Logger logger = LogManager.getLogger(this.getClass());
+
+    private final Map<String, UploadJob> uploadJobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    private CAGProfileBulkUploadServiceImpl cagProfileBulkUploadService;
+
+    @Autowired
+    @Qualifier("uploadJobExecutor")
+    private ThreadPoolTaskExecutor uploadJobExecutor;
+
+    @Value("${cag.bulk-upload.spool-dir:${java.io.tmpdir}}")
+    private String spoolDir;
+
+    @Value("${cag.bulk-upload.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    private ScheduledExecutorService purgeExecutor;
+
+    @PostConstruct
+    public void start() {
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-job-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long purgeMinutes = Math.max(1, retentionMinutes / 4);
+        purgeExecutor.scheduleWithFixedDelay(this::purgeFinishedJobs, purgeMinutes, purgeMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Spools the uploaded file and queues it for processing.
+     *
+     * @param file                Multipart file to be uploaded
+     * @param searchInputMetaData Search input metadata
+     * @return The status of the queued job
+     * @throws IOException If the file could not be spooled
+     */
+    public CAGProfileUploadJobResponse submitCagProfileBulkUpload(MultipartFile file, SearchInputMetaData searchInputMetaData) throws IOException {
+        logger.info("Start of submitCagProfileBulkUpload() : CAGProfileBulkUploadJobService, File Name: {}", file.getOriginalFilename());
+        String jobId = UUID.randomUUID().toString();
+        Path spoolFile = Files.createTempFile(Paths.get(spoolDir), "cag-upload-" + jobId, ".tmp");
+        UploadFingerprint fingerprint;
+        try (InputStream inputStream = file.getInputStream()) {
+            fingerprint = UploadFingerprint.copyTo(inputStream, spoolFile);
+        }
+
+        UploadJob uploadJob = new UploadJob(jobId, searchInputMetaData.getUserId(), file.getOriginalFilename(),
+                file.getContentType(), fingerprint);
+        uploadJobs.put(jobId, uploadJob);
+        try {
+            uploadJobExecutor.execute(() -> runJob(uploadJob, spoolFile, searchInputMetaData));
+        } catch (TaskRejectedException ex) {
+            uploadJobs.remove(jobId);
+            Files.deleteIfExists(spoolFile);
+            logger.error("Upload job queue is full, rejected file {}", file.getOriginalFilename());
+            throw new CustomApplicationException(buildErrorResponse(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many uploads in progress, please retry later", searchInputMetaData));
+        }
+
+        logger.info("End of submitCagProfileBulkUpload() : CAGProfileBulkUploadJobService, Job Id: {}", jobId);
+        return toResponse(uploadJob);
+    }
+
+    /**
+     * Returns the current status of an upload job. Jobs of other users are reported as not found.
+     *
+     * @param jobId               Id returned when the job was submitted
+     * @param searchInputMetaData Search input metadata
+     * @return The status of the job
+     */
+    public CAGProfileUploadJobResponse getCagProfileBulkUploadStatus(String jobId, SearchInputMetaData searchInputMetaData) {
+        UploadJob uploadJob = uploadJobs.get(jobId);
+        if (uploadJob == null || !Objects.equals(uploadJob.userId, searchInputMetaData.getUserId())) {
+            throw new CustomApplicationException(buildErrorResponse(HttpStatus.NOT_FOUND,
+                    "No upload job found for id " + jobId, searchInputMetaData));
+        }
+        return toResponse(uploadJob);
+    }
+
+    private void runJob(UploadJob uploadJob, Path spoolFile, SearchInputMetaData searchInputMetaData) {
+        logger.info("Start of upload job {} : CAGProfileBulkUploadJobService", uploadJob.jobId);
+        try (InputStream inputStream = Files.newInputStream(spoolFile)) {
+            uploadJob.result = cagProfileBulkUploadService.summaryOf(cagProfileBulkUploadService.processUpload(inputStream,
+                    uploadJob.fileName, uploadJob.contentType, uploadJob.fingerprint, searchInputMetaData, uploadJob.progress));
+        } catch (Exception ex) {
+            logger.error("Upload job {} failed", uploadJob.jobId, ex);
+            uploadJob.errorMessage = ex.getMessage();
+            uploadJob.progress.setPhase(UploadPhase.FAILED);
+        } finally {
+            uploadJob.finishedAt = LocalDateTime.now();
+            try {
+                Files.deleteIfExists(spoolFile);
+            } catch (IOException ex) {
+                logger.warn("Unable to delete spool file {}", spoolFile, ex);
+            }
+        }
+        logger.info("End of upload job {} : CAGProfileBulkUploadJobService, Phase: {}", uploadJob.jobId, uploadJob.progress.getPhase());
+    }
+
+    /**
+     * Drops finished jobs once their retention period has passed.
+     */
+    private void purgeFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(retentionMinutes);
+        int jobs = uploadJobs.size();
+        uploadJobs.values().removeIf(uploadJob -> uploadJob.finishedAt != null && uploadJob.finishedAt.isBefore(cutoff));
+        logger.debug("Purged {} finished upload jobs", jobs - uploadJobs.size());
+    }
+
+    private CAGProfileUploadJobResponse toResponse(UploadJob uploadJob) {
+        UploadProgress progress = uploadJob.progress;
+        return CAGProfileUploadJobResponse.builder()
+                .jobId(uploadJob.jobId)
+                .fileName(uploadJob.fileName)
+                .phase(progress.getPhase())
+                .rowsProcessed(progress.getRowsProcessed())
+                .rowsFailed(progress.getRowsFailed())
+                .etaSeconds(progress.getEtaSeconds())
+                .submittedAt(uploadJob.submittedAt)
+                .errorMessage(uploadJob.errorMessage)
+                .result(uploadJob.result)
+                .build();
+    }
+
+    private ErrorResponse buildErrorResponse(HttpStatus status, String message, SearchInputMetaData searchInputMetaData) {
+        return ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .endpoint("/cagBulkUpload")
+                .errorTitle(status)
+                .errorStatus(status.value())
+                .errorMessage(message)
+                .correlationId(searchInputMetaData.getCorrelationId())
+                .build();
+    }
+
+    /**
+     * State of a single upload job.
+     */
+    private static final class UploadJob {
+
+        private final String jobId;
+        private final String userId;
+        private final String fileName;
+        private final String contentType;
+        private final UploadFingerprint fingerprint;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final UploadProgress progress;
+        // Summary only, the saved profiles are not kept for the retention period
+        private volatile CAGProfileBulkUploadResponse result;
+        private volatile String errorMessage;
+        private volatile LocalDateTime finishedAt;
+
+        private UploadJob(String jobId, String userId, String fileName, String contentType, UploadFingerprint fingerprint) {
+            this.jobId = jobId;
+            this.userId = userId;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.fingerprint = fingerprint;
+            this.progress = new UploadProgress(fingerprint.getSize());
+        }
+    }
+}
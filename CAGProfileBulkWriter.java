@@ -0,0 +1,467 @@
+package com.businessadmin.repository;
+
+import com.businessadmin.entity.CAGProfile;
+import com.businessadmin.entity.CAGProfileBulkUpload;
+import com.businessadmin.entity.CAGProfileNotes;
+import com.businessadmin.util.NaturalKeyIndex;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes large sets of CAGProfile entities (and their cascaded CAGProfileNotes) in chunks.
+ * Every chunk is sent as JDBC batches, then flushed and cleared from the persistence context
+ * so the context never holds more than one chunk of entities.
+ */
+@Repository
+public class CAGProfileBulkWriter {
+
+    // Keeps the IN list of the index query below the bind parameter limits of the database
+    private static final int CARRIER_ID_BATCH_SIZE = 1000;
+
+    // Keeps the IN list of the rollback deletes below the bind parameter limits of the database
+    private static final int PROFILE_ID_BATCH_SIZE = 1000;
+
+    // The notes are deleted before their profiles
+    private static final String DELETE_NOTES_SQL = "DELETE FROM cag_profile_notes WHERE cag_profile_id IN (:ids)";
+
+    private static final String DELETE_PROFILES_SQL = "DELETE FROM cag_profile WHERE cag_profile_id IN (:ids)";
+
+    private final Logger logger = LogManager.getLogger(this.getClass());
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${cag.bulk-upload.chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * Persists the given profiles in one transaction, flushing and clearing every chunk.
+     *
+     * @param cagProfiles New CAGProfile entities to be persisted
+     * @return The number of profiles persisted
+     */
+    @Transactional
+    public int saveAll(Collection<CAGProfile> cagProfiles) {
+        logger.info("Start of saveAll() : CAGProfileBulkWriter, Rows: {}, Chunk Size: {}", cagProfiles.size(), chunkSize);
+        entityManager.unwrap(Session.class).setJdbcBatchSize(chunkSize);
+        int saved = persistInChunks(cagProfiles);
+        logger.info("End of saveAll() : CAGProfileBulkWriter");
+        return saved;
+    }
+
+    /**
+     * Persists one chunk of an upload and records the file row number of its last profile on the
+     * CAGProfileBulkUpload in the same transaction, so the checkpoint never runs ahead of the saved rows.
+     * The heartbeat of the upload is renewed with it, see {@link #claimUpload}.
+     *
+     * @param cagProfiles New CAGProfile entities of the chunk, in file order
+     * @param uploadId    Id of the CAGProfileBulkUpload
+     * @param lastRowNum  File row number of the last profile of the chunk
+     * @return The number of profiles persisted
+     */
+    @Transactional
+    public int saveChunkWithCheckpoint(List<CAGProfile> cagProfiles, Integer uploadId, int lastRowNum) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(chunkSize);
+        int saved = persistInChunks(cagProfiles);
+        entityManager.createQuery("update CAGProfileBulkUpload u set u.lastCommittedRow = :lastRowNum, u.heartbeatAt = :now"
+                        + " where u.fileId = :uploadId")
+                .setParameter("lastRowNum", lastRowNum)
+                .setParameter("now", new Timestamp(System.currentTimeMillis()))
+                .setParameter("uploadId", uploadId)
+                .executeUpdate();
+        return saved;
+    }
+
+    /**
+     * Renews the heartbeat of an upload saved in one transaction, from outside that transaction, so the
+     * upload isn't claimed by a rollback while it is still being saved, see {@link #claimUpload}.
+     *
+     * @param uploadId Id of the CAGProfileBulkUpload
+     */
+    @Transactional
+    public void renewHeartbeat(Integer uploadId) {
+        entityManager.createQuery("update CAGProfileBulkUpload u set u.heartbeatAt = :now where u.fileId = :uploadId")
+                .setParameter("now", new Timestamp(System.currentTimeMillis()))
+                .setParameter("uploadId", uploadId)
+                .executeUpdate();
+    }
+
+    /**
+     * Claims an upload with a single conditional update, so only one request can take it over. An upload in one
+     * of the idle statuses is claimed right away. An upload in one of the leased statuses is only claimed once its
+     * heartbeat, renewed with every committed chunk, is older than staleBefore; a request still working on the
+     * upload keeps it from being claimed.
+     *
+     * @param uploadId       Id of the CAGProfileBulkUpload
+     * @param idleStatuses   Statuses the upload may be claimed from at any time, may be empty
+     * @param leasedStatuses Statuses the upload may only be claimed from once its heartbeat is stale
+     * @param toStatus       Status of the claimed upload
+     * @param staleBefore    Heartbeats older than this are considered abandoned
+     * @return true if the upload was claimed, false if it doesn't exist or isn't in a claimable state
+     */
+    @Transactional
+    public boolean claimUpload(Integer uploadId, Collection<String> idleStatuses, Collection<String> leasedStatuses, String toStatus,
+                               Timestamp staleBefore) {
+        // An empty IN list is not portable, the idle condition is left out instead
+        String idleCondition = idleStatuses.isEmpty() ? "" : "u.uploadStatus in :idleStatuses or ";
+        Query query = entityManager.createQuery("update CAGProfileBulkUpload u set u.uploadStatus = :toStatus, u.heartbeatAt = :now"
+                        + " where u.fileId = :uploadId and (" + idleCondition + "(u.uploadStatus in :leasedStatuses"
+                        + " and (u.heartbeatAt is null or u.heartbeatAt < :staleBefore)))")
+                .setParameter("toStatus", toStatus)
+                .setParameter("now", new Timestamp(System.currentTimeMillis()))
+                .setParameter("uploadId", uploadId)
+                .setParameter("leasedStatuses", leasedStatuses)
+                .setParameter("staleBefore", staleBefore);
+        if (!idleStatuses.isEmpty()) {
+            query.setParameter("idleStatuses", idleStatuses);
+        }
+        return query.executeUpdate() == 1;
+    }
+
+    /**
+     * Finds the latest upload of a file by a user, matched on the fingerprint of the file. Uploads in one of
+     * the leased statuses only match while their heartbeat is newer than liveAfter, or when they were saved
+     * with checkpoints and can be resumed; an abandoned single transaction upload left nothing behind.
+     *
+     * @param userIdCreated  Id of the uploading user
+     * @param fileHash       SHA-256 of the file
+     * @param fileSize       Size of the file in bytes
+     * @param createdAfter   Only uploads created after this time are considered
+     * @param statuses       Statuses of the uploads that always match
+     * @param leasedStatuses Statuses of the uploads that match while they are alive or resumable
+     * @param liveAfter      Uploads with a heartbeat newer than this are still being saved
+     * @return The latest matching upload, or null if there is none
+     */
+    @Transactional(readOnly = true)
+    public CAGProfileBulkUpload findUploadByFingerprint(String userIdCreated, String fileHash, long fileSize, Timestamp createdAfter,
+                                                       Collection<String> statuses, Collection<String> leasedStatuses, Timestamp liveAfter) {
+        List<CAGProfileBulkUpload> uploads = entityManager.createQuery("select u from CAGProfileBulkUpload u"
+                        + " where u.userIdCreated = :userIdCreated and u.fileHash = :fileHash and u.fileSize = :fileSize"
+                        + " and u.dateTimeCreated > :createdAfter and (u.uploadStatus in :statuses or (u.uploadStatus in :leasedStatuses"
+                        + " and (u.heartbeatAt > :liveAfter or u.checkpointed = true))) order by u.fileId desc",
+                        CAGProfileBulkUpload.class)
+                .setParameter("userIdCreated", userIdCreated)
+                .setParameter("fileHash", fileHash)
+                .setParameter("fileSize", fileSize)
+                .setParameter("createdAfter", createdAfter)
+                .setParameter("statuses", statuses)
+                .setParameter("leasedStatuses", leasedStatuses)
+                .setParameter("liveAfter", liveAfter)
+                .setMaxResults(1)
+                .getResultList();
+        return uploads.isEmpty() ? null : uploads.get(0);
+    }
+
+    /**
+     * Sets the status of an upload.
+     *
+     * @param uploadId Id of the CAGProfileBulkUpload
+     * @param status   The new status
+     */
+    @Transactional
+    public void updateUploadStatus(Integer uploadId, String status) {
+        entityManager.createQuery("update CAGProfileBulkUpload u set u.uploadStatus = :status where u.fileId = :uploadId")
+                .setParameter("status", status)
+                .setParameter("uploadId", uploadId)
+                .executeUpdate();
+    }
+
+    /**
+     * Deletes one chunk of the profiles created by an upload, and their notes, with set based native
+     * statements. The ids of the chunk are selected first, since not every database accepts a limited
+     * subquery in a DELETE or one on the table being deleted from. Only ids are read, nothing is loaded
+     * into the persistence context and every chunk is its own transaction, so rolling back a large upload
+     * never holds long locks; call it until it returns 0.
+     *
+     * @param uploadId  Id of the CAGProfileBulkUpload that created the profiles
+     * @param chunkRows Maximum number of profiles deleted
+     * @return The number of profiles deleted
+     */
+    @Transactional
+    public int deleteUploadChunk(Integer uploadId, int chunkRows) {
+        long chunkStart = System.nanoTime();
+        List<Long> ids = entityManager.createQuery("select p.cagProfileId from CAGProfile p where p.uploadId = :uploadId"
+                        + " order by p.cagProfileId", Long.class)
+                .setParameter("uploadId", uploadId)
+                .setMaxResults(chunkRows)
+                .getResultList();
+        int notes = 0;
+        int profiles = 0;
+        for (int from = 0; from < ids.size(); from += PROFILE_ID_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + PROFILE_ID_BATCH_SIZE, ids.size()));
+            notes += entityManager.createNativeQuery(DELETE_NOTES_SQL)
+                    .setParameter("ids", batch)
+                    .executeUpdate();
+            profiles += entityManager.createNativeQuery(DELETE_PROFILES_SQL)
+                    .setParameter("ids", batch)
+                    .executeUpdate();
+        }
+        logger.debug("Deleted {} profiles and {} notes of upload {} in {} ms", profiles, notes, uploadId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - chunkStart));
+        return profiles;
+    }
+
+    /**
+     * Writes only the changes in the given profiles. Existing profiles of the carriers in the upload are
+     * loaded into a natural key index (carrierId, accountId, groupId); incoming profiles without a match
+     * are inserted, matches with different column values or a new note are updated and identical ones are skipped.
+     * Notes are only added when the profile doesn't have a note with the same content yet, existing notes are kept.
+     * When several incoming profiles share a natural key the last one wins; the others are counted as superseded.
+     *
+     * @param cagProfiles CAGProfile entities converted from the upload
+     * @return The number of inserted, updated, unchanged and superseded profiles
+     */
+    @Transactional
+    public UpsertResult upsertAll(Collection<CAGProfile> cagProfiles) {
+        logger.info("Start of upsertAll() : CAGProfileBulkWriter, Rows: {}, Chunk Size: {}", cagProfiles.size(), chunkSize);
+        entityManager.unwrap(Session.class).setJdbcBatchSize(chunkSize);
+
+        Map<String, CAGProfile> incoming = new LinkedHashMap<>();
+        Set<String> carrierIds = new HashSet<>();
+        int superseded = 0;
+        for (CAGProfile cagProfile : cagProfiles) {
+            if (incoming.put(naturalKey(cagProfile), cagProfile) != null) {
+                superseded++;
+            }
+            carrierIds.add(cagProfile.getCarrierId());
+        }
+        if (superseded > 0) {
+            logger.warn("{} rows share carrierId, accountId and groupId with a later row of the upload and were superseded by it", superseded);
+        }
+        NaturalKeyIndex index = loadIndex(carrierIds);
+
+        List<CAGProfile> inserts = new ArrayList<>();
+        Map<Object, CAGProfile> updates = new LinkedHashMap<>();
+        Map<Object, List<CAGProfileNotes>> newNotes = new LinkedHashMap<>();
+        int unchanged = 0;
+        for (Map.Entry<String, CAGProfile> entry : incoming.entrySet()) {
+            NaturalKeyIndex.Entry existing = index.get(entry.getKey());
+            if (existing == null) {
+                inserts.add(entry.getValue());
+                continue;
+            }
+            List<CAGProfileNotes> notesToAdd = notesToAdd(entry.getValue(), existing);
+            if (existing.getContentHash() == contentHash(entry.getValue()) && notesToAdd.isEmpty()) {
+                unchanged++;
+            } else {
+                updates.put(existing.getId(), entry.getValue());
+                newNotes.put(existing.getId(), notesToAdd);
+            }
+        }
+
+        int inserted = persistInChunks(inserts);
+        int updated = updateInChunks(updates, newNotes);
+        logger.info("End of upsertAll() : CAGProfileBulkWriter, Inserted: {}, Updated: {}, Unchanged: {}, Superseded: {}",
+                inserted, updated, unchanged, superseded);
+        return new UpsertResult(inserted, updated, unchanged, superseded);
+    }
+
+    /**
+     * Reads one page of the profiles created by an upload, ordered by id. The page is selected with a
+     * keyset condition on the id instead of an offset, so every page costs the same regardless of its position.
+     * Ids are selected first and the profiles are then fetched with their notes, since fetch joins cannot be limited in the database.
+     *
+     * @param uploadId       Id of the CAGProfileBulkUpload that created the profiles
+     * @param afterProfileId Id of the last profile of the previous page, or null for the first page
+     * @param pageSize       Maximum number of profiles to return
+     * @return The profiles of the page
+     */
+    @Transactional(readOnly = true)
+    public List<CAGProfile> findPageByUpload(Integer uploadId, Long afterProfileId, int pageSize) {
+        List<Long> ids = entityManager.createQuery("select p.cagProfileId from CAGProfile p where p.uploadId = :uploadId"
+                        + " and p.cagProfileId > :afterProfileId order by p.cagProfileId", Long.class)
+                .setParameter("uploadId", uploadId)
+                .setParameter("afterProfileId", afterProfileId == null ? 0L : afterProfileId)
+                .setMaxResults(pageSize)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return entityManager.createQuery("select distinct p from CAGProfile p left join fetch p.cagProfileNotes"
+                        + " where p.cagProfileId in :ids order by p.cagProfileId", CAGProfile.class)
+                .setParameter("ids", ids)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultList();
+    }
+
+    /**
+     * Persists new profiles, flushing and clearing every chunk.
+     *
+     * @param cagProfiles New CAGProfile entities to be persisted
+     * @return The number of profiles persisted
+     */
+    private int persistInChunks(Collection<CAGProfile> cagProfiles) {
+        int saved = 0;
+        int chunkRows = 0;
+        long chunkStart = System.nanoTime();
+        for (CAGProfile cagProfile : cagProfiles) {
+            entityManager.persist(cagProfile);
+            saved++;
+            if (++chunkRows == chunkSize) {
+                flushChunk(chunkRows, saved, chunkStart);
+                chunkRows = 0;
+                chunkStart = System.nanoTime();
+            }
+        }
+        if (chunkRows > 0) {
+            flushChunk(chunkRows, saved, chunkStart);
+        }
+        return saved;
+    }
+
+    /**
+     * Loads the changed profiles a chunk at a time and copies the incoming values onto them.
+     * New notes are persisted on their own, so the existing notes of a profile are never loaded.
+     *
+     * @param updates  Incoming profiles keyed by the id of the existing profile
+     * @param newNotes Notes the existing profiles don't have yet, keyed by the id of the existing profile
+     * @return The number of profiles updated
+     */
+    private int updateInChunks(Map<Object, CAGProfile> updates, Map<Object, List<CAGProfileNotes>> newNotes) {
+        List<Object> ids = new ArrayList<>(updates.keySet());
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            long chunkStart = System.nanoTime();
+            List<Object> chunkIds = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            List<CAGProfile> existingProfiles = entityManager
+                    .createQuery("select p from CAGProfile p where p.cagProfileId in :ids", CAGProfile.class)
+                    .setParameter("ids", chunkIds)
+                    .getResultList();
+            for (CAGProfile existing : existingProfiles) {
+                CAGProfile incoming = updates.get(existing.getCagProfileId());
+                existing.setPlanType(incoming.getPlanType());
+                existing.setMailOrderPharmacy(incoming.getMailOrderPharmacy());
+                existing.setProspectClient(incoming.getProspectClient());
+                existing.setEditMember(incoming.getEditMember());
+                existing.setEntitlements(incoming.getEntitlements());
+                existing.setAccessErrorMessage(incoming.getAccessErrorMessage());
+                for (CAGProfileNotes notes : newNotes.get(existing.getCagProfileId())) {
+                    notes.setCagProfile(existing);
+                    entityManager.persist(notes);
+                }
+            }
+            updated += existingProfiles.size();
+            flushChunk(existingProfiles.size(), updated, chunkStart);
+        }
+        return updated;
+    }
+
+    /**
+     * Loads id, natural key and content hash of the existing profiles of the given carriers, and the content
+     * hashes of their notes.
+     *
+     * @param carrierIds Carriers present in the upload
+     * @return The natural key index
+     */
+    private NaturalKeyIndex loadIndex(Set<String> carrierIds) {
+        long start = System.nanoTime();
+        NaturalKeyIndex index = new NaturalKeyIndex();
+        List<String> carriers = new ArrayList<>(carrierIds);
+        for (int from = 0; from < carriers.size(); from += CARRIER_ID_BATCH_SIZE) {
+            entityManager.createQuery("select p.cagProfileId, p.carrierId, p.accountId, p.groupId, p.planType, p.mailOrderPharmacy,"
+                            + " p.prospectClient, p.editMember, p.entitlements, p.accessErrorMessage"
+                            + " from CAGProfile p where p.carrierId in :carrierIds", Object[].class)
+                    .setParameter("carrierIds", carriers.subList(from, Math.min(from + CARRIER_ID_BATCH_SIZE, carriers.size())))
+                    .setHint("org.hibernate.fetchSize", chunkSize)
+                    .setHint("org.hibernate.readOnly", true)
+                    .getResultStream()
+                    .forEach(row -> index.put(
+                            NaturalKeyIndex.key((String) row[1], (String) row[2], (String) row[3]),
+                            row[0],
+                            NaturalKeyIndex.contentHash((String) row[4], (String) row[5], (String) row[6],
+                                    (String) row[7], (String) row[8], (String) row[9])));
+        }
+        for (int from = 0; from < carriers.size(); from += CARRIER_ID_BATCH_SIZE) {
+            entityManager.createQuery("select p.carrierId, p.accountId, p.groupId, n.noteContent"
+                            + " from CAGProfileNotes n join n.cagProfile p where p.carrierId in :carrierIds", Object[].class)
+                    .setParameter("carrierIds", carriers.subList(from, Math.min(from + CARRIER_ID_BATCH_SIZE, carriers.size())))
+                    .setHint("org.hibernate.fetchSize", chunkSize)
+                    .setHint("org.hibernate.readOnly", true)
+                    .getResultStream()
+                    .forEach(row -> {
+                        NaturalKeyIndex.Entry entry = index.get(NaturalKeyIndex.key((String) row[0], (String) row[1], (String) row[2]));
+                        if (entry != null) {
+                            entry.addChildHash(NaturalKeyIndex.contentHash((String) row[3]));
+                        }
+                    });
+        }
+        logger.info("Loaded {} existing CAG profiles for {} carriers in {} ms", index.size(), carriers.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return index;
+    }
+
+    private static String naturalKey(CAGProfile cagProfile) {
+        return NaturalKeyIndex.key(cagProfile.getCarrierId(), cagProfile.getAccountId(), cagProfile.getGroupId());
+    }
+
+    /**
+     * Notes of an incoming profile the existing profile doesn't have yet, compared by content.
+     */
+    private static List<CAGProfileNotes> notesToAdd(CAGProfile incoming, NaturalKeyIndex.Entry existing) {
+        if (incoming.getCagProfileNotes() == null || incoming.getCagProfileNotes().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<CAGProfileNotes> notesToAdd = new ArrayList<>(1);
+        for (CAGProfileNotes notes : incoming.getCagProfileNotes()) {
+            if (!existing.containsChildHash(NaturalKeyIndex.contentHash(notes.getNoteContent()))) {
+                notesToAdd.add(notes);
+            }
+        }
+        return notesToAdd;
+    }
+
+    private static long contentHash(CAGProfile cagProfile) {
+        return NaturalKeyIndex.contentHash(cagProfile.getPlanType(), cagProfile.getMailOrderPharmacy(), cagProfile.getProspectClient(),
+                cagProfile.getEditMember(), cagProfile.getEntitlements(), cagProfile.getAccessErrorMessage());
+    }
+
+    /**
+     * Flushes the pending inserts of the current chunk and detaches its entities.
+     *
+     * @param chunkRows  Number of profiles in the chunk
+     * @param saved      Number of profiles persisted so far
+     * @param chunkStart Start of the chunk in nanoseconds
+     */
+    private void flushChunk(int chunkRows, int saved, long chunkStart) {
+        entityManager.flush();
+        entityManager.clear();
+        long elapsedNanos = Math.max(System.nanoTime() - chunkStart, 1);
+        logger.info("Wrote CAG profile chunk of {} rows in {} ms ({} rows/sec), {} rows written",
+                chunkRows, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                chunkRows * TimeUnit.SECONDS.toNanos(1) / elapsedNanos, saved);
+    }
+
+    /**
+     * Number of profiles inserted, updated and left unchanged by an upsert, and of incoming rows
+     * superseded by a later row with the same natural key.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class UpsertResult {
+
+        private final int inserted;
+        private final int updated;
+        private final int unchanged;
+        private final int superseded;
+    }
+}
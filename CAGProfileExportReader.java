@@ -0,0 +1,105 @@
+package com.businessadmin.repository;
+
+import com.businessadmin.util.RowHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads CAG profiles for export through a forward only JDBC cursor. Rows are fetched from the database
+ * cag.bulk-upload.export.fetch-size at a time and handed over one by one, so no entity is created and
+ * memory use doesn't depend on the number of profiles.
+ */
+@Repository
+public class CAGProfileExportReader {
+
+    private static final String SELECT_PROFILES_SQL = "SELECT p.cag_profile_id, p.carrier_id, p.account_id, p.group_id, p.plan_type,"
+            + " p.mail_order_pharmacy, p.prospect_client, p.edit_member, p.entitlements, p.access_error_message, n.note_content"
+            + " FROM cag_profile p LEFT JOIN cag_profile_notes n ON n.cag_profile_id = p.cag_profile_id";
+
+    private static final String ORDER_BY_SQL = " ORDER BY p.cag_profile_id";
+
+    // Profile columns after the id, in upload column order
+    private static final int PROFILE_COLUMN_COUNT = 9;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${cag.bulk-upload.export.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Streams the profiles in id order with the columns of the upload file: carrierId, accountId, groupId, planType,
+     * mailOrderPharmacy, prospectClient, editMember, entitlements, accessErrorMessage and notes. A profile with
+     * several notes is returned once, its notes joined by line breaks. The transaction keeps the cursor open,
+     * PostgreSQL only fetches in chunks with auto commit off.
+     *
+     * @param uploadId   Only export the profiles created by this upload, or null for all profiles
+     * @param rowHandler Handler receiving the profiles, row numbers start at 1
+     * @return The number of profiles read
+     */
+    @Transactional(readOnly = true)
+    public int streamProfiles(Integer uploadId, RowHandler rowHandler) {
+        String sql = SELECT_PROFILES_SQL + (uploadId == null ? "" : " WHERE p.upload_id = ?") + ORDER_BY_SQL;
+        ProfileCollector collector = new ProfileCollector(rowHandler);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            if (uploadId != null) {
+                statement.setInt(1, uploadId);
+            }
+            return statement;
+        }, collector);
+        collector.flush();
+        return collector.rows;
+    }
+
+    /**
+     * Turns the joined profile and note rows into one row per profile.
+     */
+    private static final class ProfileCollector implements RowCallbackHandler {
+
+        private final RowHandler rowHandler;
+        private long profileId;
+        private String[] values;
+        private int rows;
+
+        private ProfileCollector(RowHandler rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void processRow(ResultSet resultSet) throws SQLException {
+            long id = resultSet.getLong(1);
+            String note = resultSet.getString(PROFILE_COLUMN_COUNT + 2);
+            if (values != null && id == profileId) {
+                if (note != null) {
+                    values[PROFILE_COLUMN_COUNT] = values[PROFILE_COLUMN_COUNT].isEmpty() ? note : values[PROFILE_COLUMN_COUNT] + "\n" + note;
+                }
+                return;
+            }
+            flush();
+            profileId = id;
+            values = new String[PROFILE_COLUMN_COUNT + 1];
+            for (int column = 0; column < PROFILE_COLUMN_COUNT; column++) {
+                String value = resultSet.getString(column + 2);
+                values[column] = value == null ? "" : value;
+            }
+            values[PROFILE_COLUMN_COUNT] = note == null ? "" : note;
+        }
+
+        private void flush() {
+            if (values != null) {
+                rowHandler.handleRow(++rows, values);
+                values = null;
+            }
+        }
+    }
+}
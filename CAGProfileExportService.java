@@ -0,0 +1,80 @@
+package com.businessadmin.service.impl;
+
+import com.businessadmin.exception.CustomApplicationException;
+import com.businessadmin.repository.CAGProfileExportReader;
+import com.businessadmin.request.common.model.SearchInputMetaData;
+import com.businessadmin.response.common.model.ErrorResponse;
+import com.businessadmin.util.ExportRowWriter;
+import com.businessadmin.util.UploadContent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports CAG profiles in the format the bulk upload accepts, with the same header row, so an export can be
+ * edited and uploaded again. Profiles are read through a database cursor and written as they arrive: a CSV
+ * export starts sending bytes right away, an XLSX export keeps a small window of rows in memory and is sent
+ * once the sheet is complete.
+ */
+@Service
+public class CAGProfileExportService {
+
+    private final Logger logger = LogManager.getLogger(this.getClass());
+
+    @Autowired
+    private CAGProfileExportReader cagProfileExportReader;
+
+    @Value("${cag.bulk-upload.export.xlsx-window-rows:100}")
+    private int xlsxWindowRows;
+
+    /**
+     * Writes the profiles to the given stream, e.g. the body of a StreamingResponseBody.
+     *
+     * @param format              csv or xlsx
+     * @param uploadId            Only export the profiles created by this upload, or null for all profiles
+     * @param outputStream        Stream receiving the export, not closed
+     * @param searchInputMetaData Search input metadata
+     * @return The number of profiles exported
+     * @throws IOException If the export could not be written
+     */
+    public int exportCagProfiles(String format, Integer uploadId, OutputStream outputStream,
+                                 SearchInputMetaData searchInputMetaData) throws IOException {
+        logger.info("Start of exportCagProfiles() : CAGProfileExportService, Format: {}, Upload Id: {}", format, uploadId);
+        UploadContent.Format exportFormat = parseFormat(format, searchInputMetaData);
+        long start = System.nanoTime();
+        int exported;
+        try (ExportRowWriter rowWriter = ExportRowWriter.open(exportFormat, outputStream, xlsxWindowRows)) {
+            rowWriter.writeRow(CAGProfileBulkUploadServiceImpl.UPLOAD_SCHEMA.getHeaders().toArray(new String[0]));
+            exported = cagProfileExportReader.streamProfiles(uploadId, (rowNum, values) -> rowWriter.writeRow(values));
+            rowWriter.finish();
+        }
+        logger.info("End of exportCagProfiles() : CAGProfileExportService, Profiles: {}, Time: {} ms",
+                exported, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return exported;
+    }
+
+    private UploadContent.Format parseFormat(String format, SearchInputMetaData searchInputMetaData) {
+        try {
+            return UploadContent.Format.valueOf(format == null ? "CSV" : format.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            ErrorResponse errorResponse = ErrorResponse.builder()
+                    .timestamp(LocalDateTime.now())
+                    .endpoint("/cagBulkUpload")
+                    .errorTitle(HttpStatus.BAD_REQUEST)
+                    .errorStatus(HttpStatus.BAD_REQUEST.value())
+                    .errorMessage("Unsupported export format: " + format + ", expected csv or xlsx")
+                    .correlationId(searchInputMetaData.getCorrelationId())
+                    .build();
+            throw new CustomApplicationException(errorResponse);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.businessadmin.response.cagProfileDetails;
+
+import com.businessadmin.entity.CAGProfile;
+import com.businessadmin.response.common.model.SearchOutputMetaData;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of the CAG profiles created by a bulk upload. The next page is requested with
+ * {@code nextAfterProfileId}, which is null once the last page has been returned.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CAGProfilePageResponse {
+
+    private SearchOutputMetaData searchOutputMetaData;
+    private Integer uploadId;
+    private int pageSize;
+    private List<CAGProfile> cagProfiles;
+    private Long nextAfterProfileId;
+}
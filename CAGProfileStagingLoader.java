@@ -0,0 +1,347 @@
+package com.businessadmin.repository;
+
+import com.businessadmin.entity.CAGProfile;
+import com.businessadmin.entity.CAGProfileNotes;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Set based persistence engine for CAG profile bulk uploads. The profiles are streamed into a staging
+ * table, with COPY on PostgreSQL and multi-row INSERTs on other databases (e.g. an embedded H2), and
+ * then moved into the profile and notes tables with INSERT ... SELECT statements in one transaction.
+ * <p>
+ * Profile and note ids are taken from the sequences of the entities the same way the pooled-lo optimizer
+ * of Hibernate does: every nextval reserves a block of cag.bulk-upload.id-allocation-size ids, which must
+ * match the increment of the sequences. The ids are written to the staging rows, so every note is inserted
+ * for exactly the profile of its row. The staging table is created by a migration, see
+ * V2026_10_17_1__create_cag_profile_staging.sql.
+ */
+@Repository
+public class CAGProfileStagingLoader {
+
+    private static final String STAGING_COLUMNS = "load_id, row_num, cag_profile_id, cag_profile_notes_id, carrier_id, account_id,"
+            + " group_id, plan_type, mail_order_pharmacy, prospect_client, edit_member, entitlements, access_error_message, notes";
+
+    private static final int STAGING_COLUMN_COUNT = 14;
+
+    private static final String INSERT_PROFILES_SQL = "INSERT INTO cag_profile (cag_profile_id, carrier_id, account_id, group_id,"
+            + " plan_type, mail_order_pharmacy, prospect_client, edit_member, entitlements, access_error_message, user_id_created,"
+            + " date_time_created, upload_id)"
+            + " SELECT s.cag_profile_id, s.carrier_id, s.account_id, s.group_id, s.plan_type, s.mail_order_pharmacy, s.prospect_client,"
+            + " s.edit_member, s.entitlements, s.access_error_message, ?, ?, ? FROM cag_profile_staging s WHERE s.load_id = ?";
+
+    private static final String INSERT_NOTES_SQL = "INSERT INTO cag_profile_notes (cag_profile_notes_id, cag_profile_id, note_content)"
+            + " SELECT s.cag_profile_notes_id, s.cag_profile_id, s.notes FROM cag_profile_staging s"
+            + " WHERE s.load_id = ? AND s.cag_profile_notes_id IS NOT NULL";
+
+    private static final String DELETE_STAGED_ROWS_SQL = "DELETE FROM cag_profile_staging WHERE load_id = ?";
+
+    private static final String COPY_SQL = "COPY cag_profile_staging (" + STAGING_COLUMNS + ") FROM STDIN WITH (FORMAT csv)";
+
+    // Rows per multi-row INSERT, keeps the statement below the bind parameter limits of the database
+    private static final int ROWS_PER_INSERT = 100;
+
+    // Sequence names are configured, not user input, but are still concatenated into the nextval statement
+    private static final Pattern SEQUENCE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.]*");
+
+    // Resolved once, null when the PostgreSQL driver is not on the classpath
+    private static final CopyApi COPY_API = CopyApi.resolve(CAGProfileStagingLoader.class.getClassLoader());
+
+    private final Logger logger = LogManager.getLogger(this.getClass());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${cag.bulk-upload.id-allocation-size:${cag.bulk-upload.chunk-size:500}}")
+    private int idAllocationSize;
+
+    @Value("${cag.bulk-upload.staging.profile-sequence:cag_profile_seq}")
+    private String profileSequence;
+
+    @Value("${cag.bulk-upload.staging.notes-sequence:cag_profile_notes_seq}")
+    private String notesSequence;
+
+    /**
+     * Loads new profiles and their notes through the staging table. The ids of the inserted profiles
+     * are set on the given entities.
+     *
+     * @param cagProfiles   New CAGProfile entities converted from the upload
+     * @param userIdCreated Id of the uploading user
+     * @param timestamp     Creation timestamp of the upload
+     * @param uploadId      Id of the CAGProfileBulkUpload, recorded on every profile
+     * @return The number of profiles inserted
+     */
+    @Transactional
+    public int load(Collection<CAGProfile> cagProfiles, String userIdCreated, Timestamp timestamp, Integer uploadId) {
+        logger.info("Start of load() : CAGProfileStagingLoader, Rows: {}", cagProfiles.size());
+        String loadId = UUID.randomUUID().toString();
+
+        long start = System.nanoTime();
+        // Reserved up front, no other statement can run on the connection while a COPY is in progress
+        int noteRows = 0;
+        for (CAGProfile cagProfile : cagProfiles) {
+            if (noteOf(cagProfile) != null) {
+                noteRows++;
+            }
+        }
+        StagingRows stagingRows = new StagingRows(loadId, cagProfiles.iterator(),
+                reserveIdBlocks(profileSequence, cagProfiles.size()), reserveIdBlocks(notesSequence, noteRows));
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            if (COPY_API != null && connection.isWrapperFor(COPY_API.connectionClass)) {
+                COPY_API.copyIn(connection, COPY_SQL, new StagingCsvReader(stagingRows));
+            } else {
+                insertRows(stagingRows);
+            }
+        } catch (SQLException | IOException ex) {
+            throw new IllegalStateException("Unable to stage CAG profiles: " + ex.getMessage(), ex);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+        long staged = System.nanoTime();
+
+        int inserted = jdbcTemplate.update(INSERT_PROFILES_SQL, userIdCreated, timestamp, uploadId, loadId);
+        int notes = jdbcTemplate.update(INSERT_NOTES_SQL, loadId);
+        jdbcTemplate.update(DELETE_STAGED_ROWS_SQL, loadId);
+
+        logger.info("End of load() : CAGProfileStagingLoader, Profiles: {}, Notes: {}, Staged in {} ms, Merged in {} ms",
+                inserted, notes, TimeUnit.NANOSECONDS.toMillis(staged - start), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - staged));
+        return inserted;
+    }
+
+    /**
+     * Reserves enough id blocks of the sequence for the given number of ids, one nextval per block.
+     * Like pooled-lo, the value returned by nextval is the first id of its block.
+     */
+    private long[] reserveIdBlocks(String sequence, int ids) {
+        if (!SEQUENCE_NAME.matcher(sequence).matches()) {
+            throw new IllegalArgumentException("Invalid sequence name: " + sequence);
+        }
+        String sql = "SELECT nextval('" + sequence + "')";
+        long[] blocks = new long[(ids + idAllocationSize - 1) / idAllocationSize];
+        for (int block = 0; block < blocks.length; block++) {
+            Long first = jdbcTemplate.queryForObject(sql, Long.class);
+            if (first == null) {
+                throw new IllegalStateException("Sequence " + sequence + " returned no value");
+            }
+            blocks[block] = first;
+        }
+        return blocks;
+    }
+
+    /**
+     * Inserts the rows into the staging table with multi-row INSERT statements.
+     */
+    private void insertRows(StagingRows stagingRows) {
+        List<Object> args = new ArrayList<>(ROWS_PER_INSERT * STAGING_COLUMN_COUNT);
+        int rows = 0;
+        while (stagingRows.hasNext()) {
+            Collections.addAll(args, stagingRows.next());
+            if (++rows == ROWS_PER_INSERT) {
+                jdbcTemplate.update(multiRowInsertSql(rows), args.toArray());
+                args.clear();
+                rows = 0;
+            }
+        }
+        if (rows > 0) {
+            jdbcTemplate.update(multiRowInsertSql(rows), args.toArray());
+        }
+    }
+
+    private String multiRowInsertSql(int rows) {
+        String rowPlaceholders = "(" + String.join(", ", Collections.nCopies(STAGING_COLUMN_COUNT, "?")) + ")";
+        return "INSERT INTO cag_profile_staging (" + STAGING_COLUMNS + ") VALUES "
+                + String.join(", ", Collections.nCopies(rows, rowPlaceholders));
+    }
+
+    private static String noteOf(CAGProfile cagProfile) {
+        if (cagProfile.getCagProfileNotes() == null || cagProfile.getCagProfileNotes().isEmpty()) {
+            return null;
+        }
+        CAGProfileNotes cagProfileNotes = cagProfile.getCagProfileNotes().iterator().next();
+        String notes = cagProfileNotes.getNoteContent();
+        return notes == null || notes.isEmpty() ? null : notes;
+    }
+
+    /**
+     * Appends a value in COPY CSV format, an unquoted empty field is read as NULL.
+     */
+    private static void appendCsv(StringBuilder line, Object value) {
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    /**
+     * Staging rows of the profiles, assigning every profile and note its id from the reserved blocks.
+     */
+    private final class StagingRows implements Iterator<Object[]> {
+
+        private final String loadId;
+        private final Iterator<CAGProfile> cagProfiles;
+        private final long[] profileIdBlocks;
+        private final long[] noteIdBlocks;
+        private int rowNum;
+        private int noteNum;
+
+        private StagingRows(String loadId, Iterator<CAGProfile> cagProfiles, long[] profileIdBlocks, long[] noteIdBlocks) {
+            this.loadId = loadId;
+            this.cagProfiles = cagProfiles;
+            this.profileIdBlocks = profileIdBlocks;
+            this.noteIdBlocks = noteIdBlocks;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cagProfiles.hasNext();
+        }
+
+        @Override
+        public Object[] next() {
+            CAGProfile cagProfile = cagProfiles.next();
+            long cagProfileId = idOf(profileIdBlocks, rowNum);
+            cagProfile.setCagProfileId(cagProfileId);
+            String notes = noteOf(cagProfile);
+            Long cagProfileNotesId = notes == null ? null : idOf(noteIdBlocks, noteNum++);
+            return new Object[]{loadId, rowNum++, cagProfileId, cagProfileNotesId, cagProfile.getCarrierId(), cagProfile.getAccountId(),
+                    cagProfile.getGroupId(), cagProfile.getPlanType(), cagProfile.getMailOrderPharmacy(), cagProfile.getProspectClient(),
+                    cagProfile.getEditMember(), cagProfile.getEntitlements(), cagProfile.getAccessErrorMessage(), notes};
+        }
+
+        private long idOf(long[] blocks, int index) {
+            return blocks[index / idAllocationSize] + index % idAllocationSize;
+        }
+    }
+
+    /**
+     * Renders the staging rows as COPY CSV one line at a time, so the rows are never held as text.
+     */
+    private static final class StagingCsvReader extends Reader {
+
+        private final StagingRows stagingRows;
+        private final StringBuilder line = new StringBuilder(256);
+        private int position;
+
+        private StagingCsvReader(StagingRows stagingRows) {
+            this.stagingRows = stagingRows;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == line.length()) {
+                if (!stagingRows.hasNext()) {
+                    return -1;
+                }
+                line.setLength(0);
+                position = 0;
+                Object[] values = stagingRows.next();
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        line.append(',');
+                    }
+                    appendCsv(line, values[i]);
+                }
+                line.append('\n');
+            }
+            int count = Math.min(length, line.length() - position);
+            line.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release, the rows are owned by the caller
+        }
+    }
+
+    /**
+     * COPY API of the PostgreSQL driver, called through method handles so the driver is only needed at runtime.
+     */
+    private static final class CopyApi {
+
+        private static final String CONNECTION_CLASS = "org.postgresql.PGConnection";
+        private static final String COPY_MANAGER_CLASS = "org.postgresql.copy.CopyManager";
+
+        private final Class<?> connectionClass;
+        private final MethodHandle getCopyApi;
+        private final MethodHandle copyIn;
+
+        private CopyApi(Class<?> connectionClass, MethodHandle getCopyApi, MethodHandle copyIn) {
+            this.connectionClass = connectionClass;
+            this.getCopyApi = getCopyApi;
+            this.copyIn = copyIn;
+        }
+
+        private static CopyApi resolve(ClassLoader classLoader) {
+            if (!ClassUtils.isPresent(CONNECTION_CLASS, classLoader)) {
+                return null;
+            }
+            try {
+                Class<?> connectionClass = ClassUtils.forName(CONNECTION_CLASS, classLoader);
+                Class<?> copyManagerClass = ClassUtils.forName(COPY_MANAGER_CLASS, classLoader);
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                return new CopyApi(connectionClass,
+                        lookup.findVirtual(connectionClass, "getCopyAPI", MethodType.methodType(copyManagerClass)),
+                        lookup.findVirtual(copyManagerClass, "copyIn", MethodType.methodType(long.class, String.class, Reader.class)));
+            } catch (ReflectiveOperationException | LinkageError ex) {
+                // An unexpected driver version, stage with INSERTs instead
+                LogManager.getLogger(CAGProfileStagingLoader.class).warn("PostgreSQL COPY is unavailable: {}", ex.getMessage());
+                return null;
+            }
+        }
+
+        private long copyIn(Connection connection, String sql, Reader reader) throws SQLException, IOException {
+            try {
+                Object copyManager = getCopyApi.invoke(connection.unwrap(connectionClass));
+                return (long) copyIn.invoke(copyManager, sql, reader);
+            } catch (SQLException | IOException | RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.businessadmin.repository;
+
+import com.businessadmin.entity.CAGProfile;
+import com.businessadmin.entity.CAGProfileNotes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Runs the multi-row INSERT path of {@link CAGProfileStagingLoader} against an embedded H2 database.
+ */
+class CAGProfileStagingLoaderTest {
+
+    private static final int ALLOCATION_SIZE = 5;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private CAGProfileStagingLoader loader;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // PostgreSQL mode for nextval('sequence'), the statement the loader issues on PostgreSQL
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new FileSystemResource("V2026_10_17_1__create_cag_profile_staging.sql"));
+        }
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE SEQUENCE cag_profile_seq START WITH 1 INCREMENT BY " + ALLOCATION_SIZE);
+        jdbcTemplate.execute("CREATE SEQUENCE cag_profile_notes_seq START WITH 1 INCREMENT BY " + ALLOCATION_SIZE);
+        jdbcTemplate.execute("CREATE TABLE cag_profile (cag_profile_id BIGINT PRIMARY KEY, carrier_id VARCHAR(255),"
+                + " account_id VARCHAR(255), group_id VARCHAR(255), plan_type VARCHAR(255), mail_order_pharmacy VARCHAR(255),"
+                + " prospect_client VARCHAR(255), edit_member VARCHAR(255), entitlements VARCHAR(255),"
+                + " access_error_message VARCHAR(4000), user_id_created VARCHAR(255), date_time_created TIMESTAMP, upload_id INTEGER)");
+        jdbcTemplate.execute("CREATE TABLE cag_profile_notes (cag_profile_notes_id BIGINT PRIMARY KEY,"
+                + " cag_profile_id BIGINT REFERENCES cag_profile (cag_profile_id), note_content VARCHAR(4000))");
+
+        loader = new CAGProfileStagingLoader();
+        ReflectionTestUtils.setField(loader, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(loader, "dataSource", dataSource);
+        ReflectionTestUtils.setField(loader, "idAllocationSize", ALLOCATION_SIZE);
+        ReflectionTestUtils.setField(loader, "profileSequence", "cag_profile_seq");
+        ReflectionTestUtils.setField(loader, "notesSequence", "cag_profile_notes_seq");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    void loadsProfilesWithIdsFromTheSequenceBlocks() {
+        List<CAGProfile> profiles = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            profiles.add(profile("C" + i, "A", "G", null));
+        }
+
+        int inserted = loader.load(profiles, "user1", new Timestamp(0), 7);
+
+        assertEquals(12, inserted);
+        // Three blocks of five ids reserved: 1-5, 6-10 and 11-15
+        assertEquals(1L, profiles.get(0).getCagProfileId());
+        assertEquals(11L, profiles.get(10).getCagProfileId());
+        assertEquals(12L, profiles.get(11).getCagProfileId());
+        assertEquals(12, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cag_profile WHERE upload_id = 7", Integer.class));
+        assertEquals(16L, jdbcTemplate.queryForObject("SELECT nextval('cag_profile_seq')", Long.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cag_profile_staging", Integer.class));
+    }
+
+    @Test
+    void attachesEveryNoteToTheProfileOfItsRow() {
+        // Same natural key on two rows, and a profile of an earlier upload with that key
+        jdbcTemplate.update("INSERT INTO cag_profile (cag_profile_id, carrier_id, account_id, group_id, upload_id)"
+                + " VALUES (1000, 'C1', NULL, NULL, 7)");
+        List<CAGProfile> profiles = List.of(
+                profile("C1", null, null, "first"),
+                profile("C1", null, null, "second"),
+                profile("C2", "A", "G", null));
+
+        loader.load(profiles, "user1", new Timestamp(0), 7);
+
+        List<Map<String, Object>> notes = jdbcTemplate.queryForList(
+                "SELECT cag_profile_id, note_content FROM cag_profile_notes ORDER BY cag_profile_notes_id");
+        assertEquals(2, notes.size());
+        assertEquals(profiles.get(0).getCagProfileId(), ((Number) notes.get(0).get("CAG_PROFILE_ID")).longValue());
+        assertEquals("first", notes.get(0).get("NOTE_CONTENT"));
+        assertEquals(profiles.get(1).getCagProfileId(), ((Number) notes.get(1).get("CAG_PROFILE_ID")).longValue());
+        assertEquals("second", notes.get(1).get("NOTE_CONTENT"));
+        assertNotNull(profiles.get(2).getCagProfileId());
+    }
+
+    private static CAGProfile profile(String carrierId, String accountId, String groupId, String note) {
+        Set<CAGProfileNotes> notes = new HashSet<>();
+        if (note != null) {
+            notes.add(CAGProfileNotes.builder().noteContent(note).build());
+        }
+        return CAGProfile.builder()
+                .carrierId(carrierId)
+                .accountId(accountId)
+                .groupId(groupId)
+                .cagProfileNotes(notes)
+                .build();
+    }
+}
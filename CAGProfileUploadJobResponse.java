@@ -0,0 +1,29 @@
+package com.businessadmin.response.cagProfileDetails;
+
+import com.businessadmin.util.UploadPhase;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Status of an asynchronous CAG profile bulk upload job.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CAGProfileUploadJobResponse {
+
+    private String jobId;
+    private String fileName;
+    private UploadPhase phase;
+    private long rowsProcessed;
+    private long rowsFailed;
+    private Long etaSeconds;
+    private LocalDateTime submittedAt;
+    private String errorMessage;
+    private CAGProfileBulkUploadResponse result;
+}
@@ -0,0 +1,53 @@
+package com.businessadmin.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per upload dictionary of the values of low cardinality columns. Every repeated value is replaced by
+ * the first instance read, so rows share one String per distinct value instead of holding their own copy.
+ * A column that turns out to have more distinct values than the limit stops being canonicalized.
+ */
+public class ColumnDictionary {
+
+    private final Map<String, String>[] dictionaries;
+    private final int maxEntriesPerColumn;
+
+    /**
+     * @param width               Number of columns of a row
+     * @param columns             Indexes of the low cardinality columns
+     * @param maxEntriesPerColumn Distinct values kept per column
+     */
+    @SuppressWarnings("unchecked")
+    public ColumnDictionary(int width, int[] columns, int maxEntriesPerColumn) {
+        this.dictionaries = new Map[width];
+        this.maxEntriesPerColumn = maxEntriesPerColumn;
+        for (int column : columns) {
+            dictionaries[column] = new HashMap<>();
+        }
+    }
+
+    /**
+     * Replaces the values of the dictionary columns of a row with their canonical instances.
+     *
+     * @param values Values of the row, updated in place
+     */
+    public void canonicalize(String[] values) {
+        for (int column = 0; column < dictionaries.length && column < values.length; column++) {
+            Map<String, String> dictionary = dictionaries[column];
+            String value = values[column];
+            if (dictionary == null || value == null) {
+                continue;
+            }
+            String canonical = dictionary.get(value);
+            if (canonical != null) {
+                values[column] = canonical;
+            } else if (dictionary.size() < maxEntriesPerColumn) {
+                dictionary.put(value, value);
+            } else {
+                // Not a low cardinality column in this file
+                dictionaries[column] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.businessadmin.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Flat check chain compiled once from the Bean Validation constraints of an upload DTO. The chain
+ * runs against the raw column values of a row, before a DTO is built, without reflection or
+ * allocation for the common constraints ({@code @NotNull}, {@code @NotEmpty}, {@code @NotBlank},
+ * {@code @Size} and literal alternation {@code @Pattern}s such as {@code "Y|N"}).
+ * <p>
+ * A row that passes the chain satisfies every constraint of the DTO. A row that fails it still has
+ * to go through the full Validator, which produces the violation messages. If the DTO uses
+ * constraints that cannot be compiled, no row passes the chain and every row falls back to the Validator.
+ */
+public final class CompiledRowValidator {
+
+    private static final Logger logger = LogManager.getLogger(CompiledRowValidator.class);
+
+    private static final Pattern LITERAL_ALTERNATION = Pattern.compile("[A-Za-z0-9 _-]+(\\|[A-Za-z0-9 _-]+)*");
+
+    private final int[] columns;
+    private final ValueRule[] rules;
+    private final boolean compiled;
+
+    private CompiledRowValidator(int[] columns, ValueRule[] rules, boolean compiled) {
+        this.columns = columns;
+        this.rules = rules;
+        this.compiled = compiled;
+    }
+
+    /**
+     * Compiles the field constraints of the DTO class.
+     *
+     * @param dtoClass         The upload DTO class
+     * @param columnProperties DTO property bound to each column, in column order
+     * @return The compiled validator
+     */
+    public static CompiledRowValidator compile(Class<?> dtoClass, List<String> columnProperties) {
+        List<Integer> columns = new ArrayList<>();
+        List<ValueRule> rules = new ArrayList<>();
+        boolean compiled = !hasConstraint(dtoClass.getAnnotations());
+
+        for (Class<?> type = dtoClass; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Method method : type.getDeclaredMethods()) {
+                compiled &= !hasConstraint(method.getAnnotations());
+            }
+            for (Field field : type.getDeclaredFields()) {
+                int column = columnProperties.indexOf(field.getName());
+                for (Annotation annotation : field.getAnnotations()) {
+                    if (!isConstraint(annotation)) {
+                        continue;
+                    }
+                    ValueRule rule = column < 0 ? null : compileRule(annotation);
+                    if (rule == null) {
+                        logger.info("Constraint {} on {}.{} is not compiled, rows of this type are checked by the Validator",
+                                annotation.annotationType().getSimpleName(), dtoClass.getSimpleName(), field.getName());
+                        compiled = false;
+                    } else {
+                        columns.add(column);
+                        rules.add(rule);
+                    }
+                }
+            }
+        }
+        return new CompiledRowValidator(columns.stream().mapToInt(Integer::intValue).toArray(),
+                rules.toArray(new ValueRule[0]), compiled);
+    }
+
+    /**
+     * Checks the raw column values of a row against the compiled chain.
+     *
+     * @param values Column values of the row
+     * @return true if the row satisfies every constraint, false if it has to be checked by the Validator
+     */
+    public boolean isValid(String[] values) {
+        if (!compiled) {
+            return false;
+        }
+        for (int i = 0; i < rules.length; i++) {
+            String value = columns[i] < values.length ? values[columns[i]] : null;
+            if (!rules[i].test(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ValueRule compileRule(Annotation annotation) {
+        if (((Class<?>[]) attribute(annotation, "groups")).length > 0) {
+            return null;
+        }
+        switch (annotation.annotationType().getSimpleName()) {
+            case "NotNull":
+                return value -> value != null;
+            case "NotEmpty":
+                return value -> value != null && !value.isEmpty();
+            case "NotBlank":
+                return CompiledRowValidator::hasText;
+            case "Size":
+                int min = (int) attribute(annotation, "min");
+                int max = (int) attribute(annotation, "max");
+                return value -> value == null || (value.length() >= min && value.length() <= max);
+            case "Pattern":
+                return compilePattern((String) attribute(annotation, "regexp"), (Object[]) attribute(annotation, "flags"));
+            default:
+                return null;
+        }
+    }
+
+    private static ValueRule compilePattern(String regexp, Object[] flags) {
+        if (flags.length == 0 && LITERAL_ALTERNATION.matcher(regexp).matches()) {
+            String[] allowed = regexp.split("\\|");
+            return value -> {
+                if (value == null) {
+                    return true;
+                }
+                for (String candidate : allowed) {
+                    if (candidate.equals(value)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+        int flagBits = 0;
+        for (Object flag : flags) {
+            flagBits |= (int) attribute(flag, "getValue");
+        }
+        Pattern pattern = Pattern.compile(regexp, flagBits);
+        return value -> value == null || pattern.matcher(value).matches();
+    }
+
+    /**
+     * Same as {@code value.trim().isEmpty()} negated, which is what Hibernate Validator checks for
+     * {@code @NotBlank}: trim() drops every character up to U+0020, unlike Character.isWhitespace.
+     */
+    private static boolean hasText(String value) {
+        if (value == null) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasConstraint(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (isConstraint(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works for both jakarta.validation and javax.validation constraints.
+     */
+    private static boolean isConstraint(Annotation annotation) {
+        for (Annotation meta : annotation.annotationType().getAnnotations()) {
+            if (meta.annotationType().getSimpleName().equals("Constraint")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object attribute(Object target, String name) {
+        try {
+            Class<?> type = target instanceof Annotation ? ((Annotation) target).annotationType() : target.getClass();
+            return type.getMethod(name).invoke(target);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Unable to read " + name + " of " + target, ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueRule {
+
+        boolean test(String value);
+    }
+}
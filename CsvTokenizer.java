@@ -0,0 +1,178 @@
+package com.businessadmin.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * RFC-4180 CSV tokenizer that reads records through a reusable char buffer. Quoted fields,
+ * escaped quotes, line breaks inside quotes and a leading byte order mark are supported.
+ * Field values are only turned into Strings when they are requested, so unmapped columns
+ * cost no allocation.
+ */
+public class CsvTokenizer {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final char DELIMITER = ',';
+    private static final char QUOTE = '"';
+    private static final char BOM = '\uFEFF';
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private char[] record = new char[256];
+    private int recordLength;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private int recordNumber;
+    private boolean started;
+
+    public CsvTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Advances to the next record, skipping blank lines.
+     *
+     * @return false once the end of the input is reached
+     * @throws IOException If there's an error reading the input
+     */
+    public boolean nextRecord() throws IOException {
+        fieldCount = 0;
+        recordLength = 0;
+
+        int c = read();
+        if (!started) {
+            started = true;
+            if (c == BOM) {
+                c = read();
+            }
+        }
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == -1) {
+            return false;
+        }
+        recordNumber++;
+
+        startField();
+        boolean quoted = false;
+        boolean atFieldStart = true;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Unterminated quoted field in CSV record " + recordNumber);
+                }
+                if (c == QUOTE) {
+                    if (peek() == QUOTE) {
+                        read();
+                        append(QUOTE);
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    append((char) c);
+                }
+            } else if (c == QUOTE && atFieldStart) {
+                quoted = true;
+            } else if (c == DELIMITER) {
+                endField();
+                startField();
+                atFieldStart = true;
+                c = read();
+                continue;
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                endField();
+                return true;
+            } else {
+                append((char) c);
+            }
+            atFieldStart = false;
+            c = read();
+        }
+    }
+
+    /**
+     * @return Number of fields in the current record
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Materializes a single field of the current record.
+     *
+     * @param index Zero based field index
+     * @return The field value, or an empty string if the record has fewer fields
+     */
+    public String getField(int index) {
+        if (index >= fieldCount) {
+            return "";
+        }
+        return new String(record, fieldStarts[index], fieldEnds[index] - fieldStarts[index]);
+    }
+
+    /**
+     * Materializes the first {@code width} fields of the current record.
+     *
+     * @param width Number of fields to return
+     * @return The field values, padded with empty strings if the record has fewer fields
+     */
+    public String[] getFields(int width) {
+        String[] values = new String[width];
+        for (int i = 0; i < width; i++) {
+            values[i] = getField(i);
+        }
+        return values;
+    }
+
+    private void startField() {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = recordLength;
+    }
+
+    private void endField() {
+        fieldEnds[fieldCount++] = recordLength;
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, recordLength * 2);
+        }
+        record[recordLength++] = c;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,159 @@
+package com.businessadmin.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Covers the RFC-4180 cases {@link CsvTokenizer} handles for every CSV upload.
+ */
+class CsvTokenizerTest {
+
+    @Test
+    void splitsUnquotedFields() throws IOException {
+        List<String[]> records = readAll("carrierId,accountId,groupId\nC1,A1,G1\n");
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"carrierId", "accountId", "groupId"}, records.get(0));
+        assertArrayEquals(new String[]{"C1", "A1", "G1"}, records.get(1));
+    }
+
+    @Test
+    void skipsLeadingByteOrderMark() throws IOException {
+        List<String[]> records = readAll("\uFEFFcarrierId,accountId\nC1,A1");
+
+        assertArrayEquals(new String[]{"carrierId", "accountId"}, records.get(0));
+        assertArrayEquals(new String[]{"C1", "A1"}, records.get(1));
+    }
+
+    @Test
+    void keepsByteOrderMarkAfterTheFirstRecord() throws IOException {
+        List<String[]> records = readAll("a\n\uFEFFb\n");
+
+        assertArrayEquals(new String[]{"\uFEFFb"}, records.get(1));
+    }
+
+    @Test
+    void unescapesDoubledQuotes() throws IOException {
+        List<String[]> records = readAll("\"say \"\"hi\"\"\",\"\"\"\",\"\"\n");
+
+        assertArrayEquals(new String[]{"say \"hi\"", "\"", ""}, records.get(0));
+    }
+
+    @Test
+    void keepsDelimitersAndLineBreaksInsideQuotes() throws IOException {
+        List<String[]> records = readAll("C1,\"first line\r\nsecond, line\",G1\nC2,A2,G2\n");
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"C1", "first line\r\nsecond, line", "G1"}, records.get(0));
+        assertArrayEquals(new String[]{"C2", "A2", "G2"}, records.get(1));
+    }
+
+    @Test
+    void treatsQuotesInsideUnquotedFieldsAsText() throws IOException {
+        List<String[]> records = readAll("5\" tall,a\"b\n");
+
+        assertArrayEquals(new String[]{"5\" tall", "a\"b"}, records.get(0));
+    }
+
+    @Test
+    void splitsOnCrLfCrAndLf() throws IOException {
+        List<String[]> records = readAll("a,1\r\nb,2\rc,3\nd,4");
+
+        assertEquals(4, records.size());
+        assertArrayEquals(new String[]{"a", "1"}, records.get(0));
+        assertArrayEquals(new String[]{"b", "2"}, records.get(1));
+        assertArrayEquals(new String[]{"c", "3"}, records.get(2));
+        assertArrayEquals(new String[]{"d", "4"}, records.get(3));
+    }
+
+    @Test
+    void skipsBlankLines() throws IOException {
+        List<String[]> records = readAll("\r\n\na,1\r\n\r\n\nb,2\n\n");
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"a", "1"}, records.get(0));
+        assertArrayEquals(new String[]{"b", "2"}, records.get(1));
+    }
+
+    @Test
+    void keepsEmptyFields() throws IOException {
+        List<String[]> records = readAll(",a,,\n");
+
+        assertArrayEquals(new String[]{"", "a", "", ""}, records.get(0));
+    }
+
+    @Test
+    void returnsNoRecordForEmptyInput() throws IOException {
+        assertFalse(new CsvTokenizer(new StringReader("")).nextRecord());
+        assertFalse(new CsvTokenizer(new StringReader("\uFEFF\r\n")).nextRecord());
+    }
+
+    @Test
+    void rejectsUnterminatedQuotedField() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("a,b\nC1,\"never closed\nC2,A2\n"));
+        assertTrue(tokenizer.nextRecord());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, tokenizer::nextRecord);
+        assertEquals("Unterminated quoted field in CSV record 2", ex.getMessage());
+    }
+
+    @Test
+    void padsShortRecords() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("C1,A1\n"));
+        assertTrue(tokenizer.nextRecord());
+
+        assertEquals(2, tokenizer.getFieldCount());
+        assertEquals("A1", tokenizer.getField(1));
+        assertEquals("", tokenizer.getField(2));
+        assertArrayEquals(new String[]{"C1", "A1", "", ""}, tokenizer.getFields(4));
+        assertArrayEquals(new String[]{"C1"}, tokenizer.getFields(1));
+    }
+
+    @Test
+    void readsRecordsLargerThanTheBuffer() throws IOException {
+        // Longer than the 8192 char read buffer and the initial record and field arrays
+        String longValue = "x".repeat(20_000);
+        StringBuilder csv = new StringBuilder();
+        for (int column = 0; column < 40; column++) {
+            csv.append(column == 0 ? "" : ",").append(column);
+        }
+        csv.append("\r\n\"").append(longValue).append("\",last\r\n");
+
+        List<String[]> records = readAll(csv.toString());
+
+        assertEquals(2, records.size());
+        assertEquals(40, records.get(0).length);
+        assertEquals("39", records.get(0)[39]);
+        assertArrayEquals(new String[]{longValue, "last"}, records.get(1));
+    }
+
+    @Test
+    void splitsCrLfAcrossBufferBoundary() throws IOException {
+        // The CR is the last char of the first buffer fill, its LF the first of the next
+        String first = "y".repeat(8191);
+        List<String[]> records = readAll(first + "\r\nnext\r\n");
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{first}, records.get(0));
+        assertArrayEquals(new String[]{"next"}, records.get(1));
+    }
+
+    private static List<String[]> readAll(String csv) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv));
+        List<String[]> records = new ArrayList<>();
+        while (tokenizer.nextRecord()) {
+            records.add(tokenizer.getFields(tokenizer.getFieldCount()));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,140 @@
+package com.businessadmin.util;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes exported rows in one of the upload formats, so an export can be uploaded again as is.
+ * The export is only complete once {@link #finish()} was called; closing the writer releases its
+ * resources without completing a failed export. The output stream is not closed.
+ */
+public abstract class ExportRowWriter implements Closeable {
+
+    /**
+     * Opens a writer for the given format.
+     *
+     * @param format       Format of the export
+     * @param outputStream Stream receiving the export
+     * @param windowRows   Rows of an XLSX sheet kept in memory before they are written to a temporary file
+     * @return The row writer
+     */
+    public static ExportRowWriter open(UploadContent.Format format, OutputStream outputStream, int windowRows) {
+        return format == UploadContent.Format.XLSX ? new XlsxRowWriter(outputStream, windowRows) : new CsvRowWriter(outputStream);
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param values Cell values of the row
+     */
+    public abstract void writeRow(String[] values);
+
+    /**
+     * Writes what is left of the export to the stream and flushes it. Only called once all rows were written.
+     *
+     * @throws IOException If the export could not be written
+     */
+    public abstract void finish() throws IOException;
+
+    /**
+     * Quotes a CSV field when it contains a delimiter, a quote or a line break.
+     *
+     * @param value Field value, null is written as an empty field
+     * @return The escaped field
+     */
+    public static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Writes RFC-4180 CSV straight to the stream, every full buffer is sent right away.
+     */
+    private static final class CsvRowWriter extends ExportRowWriter {
+
+        private final BufferedWriter writer;
+
+        private CsvRowWriter(OutputStream outputStream) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void writeRow(String[] values) {
+            try {
+                for (int column = 0; column < values.length; column++) {
+                    if (column > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(escapeCsv(values[column]));
+                }
+                writer.write("\r\n");
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Unable to write CSV export", ex);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release, the stream belongs to the caller
+        }
+    }
+
+    /**
+     * Writes an XLSX sheet through a streaming workbook that only keeps a window of rows in memory and
+     * flushes older rows to a compressed temporary file. The zip container is only written once the sheet
+     * is complete, when the writer is finished.
+     */
+    private static final class XlsxRowWriter extends ExportRowWriter {
+
+        private final OutputStream outputStream;
+        private final SXSSFWorkbook workbook;
+        private final SXSSFSheet sheet;
+        private int rowNum;
+
+        private XlsxRowWriter(OutputStream outputStream, int windowRows) {
+            this.outputStream = outputStream;
+            // Inline strings, a shared strings table would keep every distinct value in memory
+            this.workbook = new SXSSFWorkbook(null, windowRows, true, false);
+            this.sheet = workbook.createSheet("Sheet1");
+        }
+
+        @Override
+        public void writeRow(String[] values) {
+            Row row = sheet.createRow(rowNum++);
+            for (int column = 0; column < values.length; column++) {
+                row.createCell(column).setCellValue(values[column] == null ? "" : values[column]);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            workbook.write(outputStream);
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+}
@@ -1,24 +1,27 @@
 package com.example.demo.service;
 
+import com.businessadmin.util.CompiledRowValidator;
+import com.businessadmin.util.SchemaRowHandler;
+import com.businessadmin.util.SchemaUploadReader;
+import com.businessadmin.util.UploadAdmissionController;
+import com.businessadmin.util.UploadContent;
+import com.businessadmin.util.UploadSchema;
 import com.example.demo.dto.CarrierPlanDTO;
 import com.example.demo.entity.CarrierPlan;
 import com.example.demo.entity.UploadedFile;
 import com.example.demo.repository.CarrierPlanRepository;
 import com.example.demo.repository.UploadedFileRepository;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.Validator;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.util.*;
 
 @Service
@@ -33,13 +36,36 @@ public class FileUploadService {
     @Autowired
     private Validator validator;
 
-    private static final List<String> EXPECTED_HEADERS = Arrays.asList("carrierid", "plantype", "accountid", "prospect_client");
+    @Autowired
+    private UploadAdmissionController uploadAdmissionController;
+
+    @Value("${cag.bulk-upload.max-uncompressed-bytes:1073741824}")
+    private long maxUncompressedBytes;
+
+    // Columns of the file and the DTO property bound to each
+    private static final UploadSchema<CarrierPlanDTO, CarrierPlanDTO> UPLOAD_SCHEMA = UploadSchema.forBean(CarrierPlanDTO.class, CarrierPlanDTO::new)
+            .column("carrierid", "carrierId")
+            .column("plantype", "planType")
+            .column("accountid", "accountId")
+            .column("prospect_client", "prospectClient")
+            .build();
+
+    // DTO constraints compiled once, rows passing them skip the Validator
+    private static final CompiledRowValidator ROW_RULES = CompiledRowValidator.compile(CarrierPlanDTO.class, UPLOAD_SCHEMA.getProperties());
 
     public void saveFile(MultipartFile file) throws IOException {
-        // Validate the file headers first
-        validateFileHeaders(file);
+        UploadContent.Kind kind;
+        try (InputStream inputStream = new BufferedInputStream(file.getInputStream())) {
+            kind = UploadContent.detect(inputStream);
+        }
+        // Wait for heap to be available, there's no user here so only the memory budget applies
+        try (UploadAdmissionController.Permit permit = uploadAdmissionController.admit(null, file.getOriginalFilename(), kind, file.getSize())) {
+            saveAdmittedFile(file);
+        }
+    }
 
-        // Validate the entire file content
+    private void saveAdmittedFile(MultipartFile file) throws IOException {
+        // Validate the file headers and the entire file content in one pass
         Set<CarrierPlanDTO> carrierPlanDTOs = validateFileContent(file);
 
         // If validation passes, save the file
@@ -58,103 +84,31 @@ public class FileUploadService {
         carrierPlanRepository.saveAll(carrierPlans);
     }
 
-    private void validateFileHeaders(MultipartFile file) throws IOException {
-        if (file.getOriginalFilename().endsWith(".csv")) {
-            validateCsvHeaders(file);
-        } else if (file.getOriginalFilename().endsWith(".xlsx")) {
-            validateExcelHeaders(file);
-        }
-    }
-
-    private void validateCsvHeaders(MultipartFile file) throws IOException {
-        BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()));
-        String headerLine = br.readLine();
-        if (headerLine == null) {
-            throw new IllegalArgumentException("File is empty or missing headers");
-        }
-
-        String[] headers = headerLine.split(",");
-        validateHeaders(headers);
-    }
-
-    private void validateExcelHeaders(MultipartFile file) throws IOException {
-        Workbook workbook = new XSSFWorkbook(file.getInputStream());
-        Sheet sheet = workbook.getSheetAt(0);
-        Row headerRow = sheet.getRow(0);
-        if (headerRow == null) {
-            workbook.close();
-            throw new IllegalArgumentException("File is empty or missing headers");
-        }
-
-        List<String> headers = new ArrayList<>();
-        for (int i = 0; i < headerRow.getPhysicalNumberOfCells(); i++) {
-            headers.add(headerRow.getCell(i).getStringCellValue().toLowerCase().trim());
-        }
-
-        workbook.close();
-        validateHeaders(headers.toArray(new String[0]));
-    }
-
-    private void validateHeaders(String[] headers) {
-        List<String> missingHeaders = new ArrayList<>();
-        for (String expectedHeader : EXPECTED_HEADERS) {
-            if (!Arrays.asList(headers).contains(expectedHeader)) {
-                missingHeaders.add(expectedHeader);
-            }
-        }
-
-        if (!missingHeaders.isEmpty()) {
-            throw new IllegalArgumentException("Missing or incorrect headers: " + String.join(", ", missingHeaders));
-        }
-    }
-
+    // The format is detected from the content, so .csv.gz and zipped CSV files are read like plain CSV
     private Set<CarrierPlanDTO> validateFileContent(MultipartFile file) throws IOException {
         Set<CarrierPlanDTO> carrierPlanDTOs = new HashSet<>();
-
-        if (file.getOriginalFilename().endsWith(".csv")) {
-            carrierPlanDTOs = validateCsv(file);
-        } else if (file.getOriginalFilename().endsWith(".xlsx")) {
-            carrierPlanDTOs = validateExcel(file);
-        }
-
-        return carrierPlanDTOs;
-    }
-
-    private Set<CarrierPlanDTO> validateCsv(MultipartFile file) throws IOException {
-        Set<CarrierPlanDTO> carrierPlanDTOs = new HashSet<>();
-        BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()));
-        br.readLine(); // Skip header line
-        String line;
-        while ((line = br.readLine()) != null) {
-            String[] data = line.split(",");
-            CarrierPlanDTO carrierPlanDTO = new CarrierPlanDTO();
-            carrierPlanDTO.setCarrierId(data[0]);
-            carrierPlanDTO.setPlanType(data[1]);
-            carrierPlanDTO.setAccountId(data[2]);
-            carrierPlanDTO.setProspectClient(data[3]);
-
-            validateCarrierPlanDTO(carrierPlanDTO);
-            carrierPlanDTOs.add(carrierPlanDTO);
-        }
-        return carrierPlanDTOs;
-    }
-
-    private Set<CarrierPlanDTO> validateExcel(MultipartFile file) throws IOException {
-        Set<CarrierPlanDTO> carrierPlanDTOs = new HashSet<>();
-        Workbook workbook = new XSSFWorkbook(file.getInputStream());
-        Sheet sheet = workbook.getSheetAt(0);
-        for (int i = 1; i <= sheet.getLastRowNum(); i++) { // Start from the second row to skip the header
-            Row row = sheet.getRow(i);
-            CarrierPlanDTO carrierPlanDTO = new CarrierPlanDTO();
-            carrierPlanDTO.setCarrierId(row.getCell(0).getStringCellValue());
-            carrierPlanDTO.setPlanType(row.getCell(1).getStringCellValue());
-            carrierPlanDTO.setAccountId(row.getCell(2).getStringCellValue());
-            carrierPlanDTO.setProspectClient(row.getCell(3).getStringCellValue());
-
-            validateCarrierPlanDTO(carrierPlanDTO);
-            carrierPlanDTOs.add(carrierPlanDTO);
+        try (InputStream inputStream = file.getInputStream();
+             UploadContent uploadContent = UploadContent.open(inputStream, maxUncompressedBytes)) {
+            SchemaUploadReader.read(uploadContent, new SchemaRowHandler<CarrierPlanDTO>() {
+
+                private UploadSchema.BoundSchema<CarrierPlanDTO> schema;
+
+                @Override
+                public UploadSchema.BoundSchema<CarrierPlanDTO> handleHeader(String[] headers) {
+                    schema = UPLOAD_SCHEMA.bind(headers);
+                    return schema;
+                }
+
+                @Override
+                public void handleRow(int rowNum, String[] data) {
+                    CarrierPlanDTO carrierPlanDTO = schema.map(data);
+                    if (!ROW_RULES.isValid(data)) {
+                        validateCarrierPlanDTO(carrierPlanDTO);
+                    }
+                    carrierPlanDTOs.add(carrierPlanDTO);
+                }
+            });
         }
-        workbook.close();
         return carrierPlanDTOs;
     }
 
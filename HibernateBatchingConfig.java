@@ -0,0 +1,26 @@
+package com.businessadmin.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables JDBC batching for the CAG profile bulk upload. Inserts are ordered by entity so
+ * profile and note inserts of a chunk are grouped into their own batches, and pooled-lo
+ * sequence allocation hands out ids without a sequence round trip per row.
+ * Properties set explicitly in the application configuration take precedence.
+ */
+@Configuration
+public class HibernateBatchingConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateBatchingCustomizer(@Value("${cag.bulk-upload.chunk-size:500}") int chunkSize) {
+        return hibernateProperties -> {
+            hibernateProperties.putIfAbsent("hibernate.jdbc.batch_size", chunkSize);
+            hibernateProperties.putIfAbsent("hibernate.order_inserts", true);
+            hibernateProperties.putIfAbsent("hibernate.order_updates", true);
+            hibernateProperties.putIfAbsent("hibernate.id.optimizer.pooled.preferred", "pooled-lo");
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package com.businessadmin.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Blob store keeping blobs on the local file system under {@code <root>/<aa>/<bb>/<sha256>}.
+ * Blobs are written to a temporary file first and moved into place when committed.
+ */
+@Component
+public class LocalFileSystemBlobStore implements BlobStore {
+
+    private final Logger logger = LogManager.getLogger(this.getClass());
+
+    private final Path root;
+
+    public LocalFileSystemBlobStore(@Value("${cag.bulk-upload.blob-store.root:${java.io.tmpdir}/cag-upload-blobs}") String root) throws IOException {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        Files.createDirectories(this.root.resolve("tmp"));
+    }
+
+    @Override
+    public BlobWriter openWriter() throws IOException {
+        return new LocalBlobWriter(Files.createTempFile(root.resolve("tmp"), "blob-", ".tmp"));
+    }
+
+    @Override
+    public InputStream open(String location) throws IOException {
+        Path blobFile = root.resolve(location).normalize();
+        if (!blobFile.startsWith(root)) {
+            throw new IllegalArgumentException("Invalid blob location: " + location);
+        }
+        return Files.newInputStream(blobFile);
+    }
+
+    private final class LocalBlobWriter extends BlobWriter {
+
+        private final Path tempFile;
+        private final OutputStream out;
+        private final MessageDigest digest;
+        private long size;
+        private boolean closed;
+
+        private LocalBlobWriter(Path tempFile) throws IOException {
+            this.tempFile = tempFile;
+            this.out = Files.newOutputStream(tempFile);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("SHA-256 is not available", ex);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            digest.update((byte) b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            digest.update(b, off, len);
+            size += len;
+        }
+
+        @Override
+        public StoredBlob commit() throws IOException {
+            out.close();
+            closed = true;
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            String location = sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256;
+            Path blobFile = root.resolve(location);
+            if (Files.exists(blobFile)) {
+                logger.info("Blob {} already stored, dropping duplicate copy", sha256);
+                Files.delete(tempFile);
+            } else {
+                Files.createDirectories(blobFile.getParent());
+                try {
+                    Files.move(tempFile, blobFile, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException ex) {
+                    // Stored concurrently by another upload of the same file
+                    Files.delete(tempFile);
+                }
+            }
+            return new StoredBlob(sha256, size, location);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.businessadmin.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory index of existing rows keyed by their natural key. Only the id and a 64-bit hash of
+ * the non key columns are kept per row, which is enough to tell whether an incoming row is new,
+ * changed or unchanged. Child rows (e.g. notes) are kept as content hashes of their own.
+ */
+public class NaturalKeyIndex {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Builds the natural key of a row.
+     *
+     * @param keyColumns Values of the key columns
+     * @return The natural key
+     */
+    public static String key(String... keyColumns) {
+        return String.join("\u0000", keyColumns);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the given column values, null and empty values hash differently.
+     *
+     * @param columns Values of the non key columns
+     * @return The content hash
+     */
+    public static long contentHash(String... columns) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String column : columns) {
+            if (column == null) {
+                hash = (hash ^ 0xff) * FNV_PRIME;
+                continue;
+            }
+            for (int i = 0; i < column.length(); i++) {
+                hash = (hash ^ column.charAt(i)) * FNV_PRIME;
+            }
+            hash = (hash ^ 0x1f) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    public void put(String key, Object id, long contentHash) {
+        entries.put(key, new Entry(id, contentHash));
+    }
+
+    /**
+     * @param key Natural key of the row
+     * @return The indexed row, or null if no row with this key exists
+     */
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Id and content hash of an indexed row, and the content hashes of its child rows.
+     */
+    public static final class Entry {
+
+        private static final long[] NO_CHILDREN = new long[0];
+
+        private final Object id;
+        private final long contentHash;
+        private long[] childHashes = NO_CHILDREN;
+
+        private Entry(Object id, long contentHash) {
+            this.id = id;
+            this.contentHash = contentHash;
+        }
+
+        public Object getId() {
+            return id;
+        }
+
+        public long getContentHash() {
+            return contentHash;
+        }
+
+        public void addChildHash(long childHash) {
+            if (!containsChildHash(childHash)) {
+                childHashes = Arrays.copyOf(childHashes, childHashes.length + 1);
+                childHashes[childHashes.length - 1] = childHash;
+            }
+        }
+
+        /**
+         * Rows have a handful of children at most, so a linear scan beats a set.
+         */
+        public boolean containsChildHash(long childHash) {
+            for (long hash : childHashes) {
+                if (hash == childHash) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
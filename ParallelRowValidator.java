@@ -0,0 +1,134 @@
+package com.businessadmin.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Validates parsed rows concurrently. Rows are collected into batches in file order and every full
+ * batch is validated on the given executor while parsing continues. Failures are handed to the
+ * failure handler on the calling thread in row order, as soon as all earlier batches are done, so
+ * error reporting does not depend on which batch finished first and failures are not accumulated.
+ *
+ * @param <T> Type of the parsed row
+ * @param <V> Type of the validation result of a failing row
+ */
+public class ParallelRowValidator<T, V> {
+
+    private final Executor executor;
+    private final int batchSize;
+    private final Function<T, V> check;
+    private final Consumer<RowFailure<V>> failureHandler;
+    private final Deque<CompletableFuture<List<RowFailure<V>>>> batches = new ArrayDeque<>();
+    private int[] rowNums;
+    private List<T> rows;
+
+    /**
+     * @param executor  Executor the batches are validated on
+     * @param batchSize Number of rows per batch
+     * @param check          Validates a single row, returning null when the row is valid
+     * @param failureHandler Receives the failing rows in row order, may throw to stop the upload
+     */
+    public ParallelRowValidator(Executor executor, int batchSize, Function<T, V> check, Consumer<RowFailure<V>> failureHandler) {
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.check = check;
+        this.failureHandler = failureHandler;
+        newBatch();
+    }
+
+    /**
+     * Adds a row to the current batch, submitting the batch once it is full.
+     *
+     * @param rowNum Row number used for error reporting
+     * @param row    The parsed row
+     */
+    public void add(int rowNum, T row) {
+        rowNums[rows.size()] = rowNum;
+        rows.add(row);
+        if (rows.size() == batchSize) {
+            submitBatch();
+        }
+        while (!batches.isEmpty() && batches.peekFirst().isDone()) {
+            reportFailures(batches.pollFirst());
+        }
+    }
+
+    /**
+     * Submits the last partial batch and waits for all batches to finish, reporting their failures.
+     */
+    public void await() {
+        if (!rows.isEmpty()) {
+            submitBatch();
+        }
+        while (!batches.isEmpty()) {
+            reportFailures(batches.pollFirst());
+        }
+    }
+
+    private void reportFailures(CompletableFuture<List<RowFailure<V>>> batch) {
+        List<RowFailure<V>> failures;
+        try {
+            failures = batch.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+        failures.forEach(failureHandler);
+    }
+
+    private void submitBatch() {
+        int[] batchRowNums = rowNums;
+        List<T> batchRows = rows;
+        batches.add(CompletableFuture.supplyAsync(() -> validateBatch(batchRowNums, batchRows), executor));
+        newBatch();
+    }
+
+    private List<RowFailure<V>> validateBatch(int[] batchRowNums, List<T> batchRows) {
+        List<RowFailure<V>> failures = new ArrayList<>();
+        for (int i = 0; i < batchRows.size(); i++) {
+            V result = check.apply(batchRows.get(i));
+            if (result != null) {
+                failures.add(new RowFailure<>(batchRowNums[i], result));
+            }
+        }
+        return failures;
+    }
+
+    private void newBatch() {
+        rowNums = new int[batchSize];
+        rows = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * A row that failed validation.
+     *
+     * @param <V> Type of the validation result
+     */
+    public static final class RowFailure<V> {
+
+        private final int rowNum;
+        private final V result;
+
+        private RowFailure(int rowNum, V result) {
+            this.rowNum = rowNum;
+            this.result = result;
+        }
+
+        public int getRowNum() {
+            return rowNum;
+        }
+
+        public V getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.businessadmin.repository;
+
+import com.businessadmin.util.RowHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the valid carrier, account and group combinations from the cag_reference_data table.
+ * Missing account and group ids are returned as empty strings, like empty cells of an upload.
+ */
+@Repository
+public class ReferenceDataRepository {
+
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM cag_reference_data";
+
+    private static final String SELECT_SQL = "SELECT carrier_id, account_id, group_id FROM cag_reference_data";
+
+    // Keeps the IN list below the bind parameter limits of the database
+    private static final int CARRIER_ID_BATCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${cag.bulk-upload.reference.fetch-size:10000}")
+    private int fetchSize;
+
+    public long countCombinations() {
+        Long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Streams all combinations through a forward only cursor.
+     *
+     * @param rowHandler Handler receiving carrierId, accountId and groupId of every combination
+     */
+    @Transactional(readOnly = true)
+    public void streamCombinations(RowHandler rowHandler) {
+        int[] rowNum = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, resultSet -> rowHandler.handleRow(++rowNum[0], combinationOf(resultSet)));
+    }
+
+    /**
+     * Reads the combinations of the given carriers, with one query per batch of carriers.
+     *
+     * @param carrierIds Carrier ids
+     * @return carrierId, accountId and groupId of every combination found
+     */
+    public List<String[]> findByCarrierIds(Collection<String> carrierIds) {
+        if (carrierIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> carriers = new ArrayList<>(carrierIds);
+        List<String[]> combinations = new ArrayList<>();
+        for (int from = 0; from < carriers.size(); from += CARRIER_ID_BATCH_SIZE) {
+            List<String> batch = carriers.subList(from, Math.min(from + CARRIER_ID_BATCH_SIZE, carriers.size()));
+            String sql = SELECT_SQL + " WHERE carrier_id IN (" + String.join(",", Collections.nCopies(batch.size(), "?")) + ")";
+            combinations.addAll(jdbcTemplate.query(sql, (resultSet, row) -> combinationOf(resultSet), batch.toArray()));
+        }
+        return combinations;
+    }
+
+    private static String[] combinationOf(ResultSet resultSet) throws SQLException {
+        String[] combination = new String[3];
+        for (int column = 0; column < 3; column++) {
+            String value = resultSet.getString(column + 1);
+            combination[column] = value == null ? "" : value.trim();
+        }
+        return combination;
+    }
+}
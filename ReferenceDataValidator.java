@@ -0,0 +1,193 @@
+package com.businessadmin.service.impl;
+
+import com.businessadmin.repository.ReferenceDataRepository;
+import com.businessadmin.util.BloomFilter;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks uploaded carrier, account and group combinations against the reference data without a query per row.
+ * A Bloom filter of all valid combinations, rebuilt every cag.bulk-upload.reference.refresh-minutes, rejects
+ * unknown combinations right away. Combinations it might contain are confirmed through a Caffeine cache, whose
+ * misses are loaded together, a batch of carriers per query, caching every combination of those carriers.
+ * Combinations added to the reference data are only accepted once the filter was rebuilt, or after {@link #refresh()}.
+ */
+@Component
+public class ReferenceDataValidator {
+
+    private static final int COMBINATION_WIDTH = 3;
+    private static final char KEY_SEPARATOR = '\u001f';
+
+    private final Logger logger = LogManager.getLogger(this.getClass());
+
+    @Autowired
+    private ReferenceDataRepository referenceDataRepository;
+
+    @Value("${cag.bulk-upload.reference.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cag.bulk-upload.reference.refresh-minutes:15}")
+    private long refreshMinutes;
+
+    @Value("${cag.bulk-upload.reference.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${cag.bulk-upload.reference.cache-size:1000000}")
+    private long cacheSize;
+
+    private volatile BloomFilter bloomFilter;
+    private LoadingCache<String, Boolean> combinations;
+    private ScheduledExecutorService refreshExecutor;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        combinations = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(refreshMinutes, TimeUnit.MINUTES)
+                .build(new CombinationLoader());
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reference-data-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException ex) {
+                // The previous filter stays in use until the next attempt
+                logger.error("Unable to refresh the reference data", ex);
+            }
+        }, 0, refreshMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Rebuilds the Bloom filter from the reference data and empties the cache.
+     */
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        BloomFilter filter = new BloomFilter(referenceDataRepository.countCombinations(), falsePositiveRate);
+        referenceDataRepository.streamCombinations((rowNum, combination) -> filter.put(combination, COMBINATION_WIDTH));
+        bloomFilter = filter;
+        combinations.invalidateAll();
+        logger.info("Loaded {} reference data combinations into a {} KB Bloom filter in {} ms", filter.getEntries(),
+                filter.sizeInBytes() / 1024, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Finds the combinations missing from the reference data.
+     *
+     * @param rows carrierId, accountId and groupId of every row
+     * @return The indexes of the rows with an unknown combination
+     */
+    public BitSet findUnknown(List<String[]> rows) {
+        BitSet unknown = new BitSet(rows.size());
+        if (!enabled || rows.isEmpty()) {
+            return unknown;
+        }
+        BloomFilter filter = bloomFilter;
+        if (filter == null) {
+            // The first load hasn't finished yet, wait for it
+            synchronized (this) {
+                if (bloomFilter == null) {
+                    refresh();
+                }
+                filter = bloomFilter;
+            }
+        }
+
+        Map<String, List<Integer>> candidates = new LinkedHashMap<>();
+        for (int row = 0; row < rows.size(); row++) {
+            String[] combination = normalize(rows.get(row));
+            if (!filter.mightContain(combination, COMBINATION_WIDTH)) {
+                unknown.set(row);
+            } else {
+                candidates.computeIfAbsent(keyOf(combination), key -> new ArrayList<>(1)).add(row);
+            }
+        }
+        Map<String, Boolean> found = combinations.getAll(candidates.keySet());
+        candidates.forEach((key, candidateRows) -> {
+            if (!Boolean.TRUE.equals(found.get(key))) {
+                candidateRows.forEach(unknown::set);
+            }
+        });
+        return unknown;
+    }
+
+    private static String[] normalize(String[] combination) {
+        String[] normalized = new String[COMBINATION_WIDTH];
+        for (int column = 0; column < COMBINATION_WIDTH; column++) {
+            String value = column < combination.length ? combination[column] : null;
+            normalized[column] = value == null ? "" : value.trim();
+        }
+        return normalized;
+    }
+
+    private static String keyOf(String[] combination) {
+        return combination[0] + KEY_SEPARATOR + combination[1] + KEY_SEPARATOR + combination[2];
+    }
+
+    /**
+     * Loads missed combinations by their carriers. All combinations of those carriers are returned and cached,
+     * so the next rows of the same carriers are answered from the cache.
+     */
+    private final class CombinationLoader implements CacheLoader<String, Boolean> {
+
+        @Override
+        public Boolean load(String key) {
+            return loadAll(Set.of(key)).get(key);
+        }
+
+        @Override
+        public Map<String, Boolean> loadAll(Set<? extends String> keys) {
+            Set<String> carrierIds = new HashSet<>();
+            for (String key : keys) {
+                carrierIds.add(key.substring(0, key.indexOf(KEY_SEPARATOR)));
+            }
+            Map<String, Boolean> loaded = new HashMap<>();
+            for (String[] combination : referenceDataRepository.findByCarrierIds(carrierIds)) {
+                loaded.put(keyOf(combination), Boolean.TRUE);
+            }
+            for (String key : keys) {
+                loaded.putIfAbsent(key, Boolean.FALSE);
+            }
+            return loaded;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.businessadmin.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Detects repeated rows in an upload from a 128-bit hash of their values. The hashes are kept in an
+ * open addressing table of primitive longs, 16 bytes per slot, so no row values are retained. Once the
+ * table outgrows the memory budget it is moved to a memory-mapped temporary file and keeps growing there.
+ */
+public class RowDuplicateDetector implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 1 << 14;
+    private static final int BYTES_PER_SLOT = 16;
+    // 1 GB table, a single mapping is limited to 2 GB
+    private static final long MAX_CAPACITY = 1L << 26;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long memoryBudgetBytes;
+    private final Path spillDir;
+    private LongBuffer table;
+    private Path spillFile;
+    private long capacity;
+    private long size;
+
+    /**
+     * @param memoryBudgetBytes Heap the table may use before it is spilled to disk
+     * @param spillDir          Directory of the spill file
+     */
+    public RowDuplicateDetector(long memoryBudgetBytes, Path spillDir) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDir = spillDir;
+        this.capacity = INITIAL_CAPACITY;
+        this.table = allocate(capacity);
+    }
+
+    /**
+     * High half of the 128-bit row hash, 64-bit FNV-1a over the values.
+     *
+     * @param values Values of the row
+     * @param width  Number of leading values to hash
+     * @return The high 64 bits of the row hash
+     */
+    public static long hashHigh(String[] values, int width) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int column = 0; column < width; column++) {
+            String value = column < values.length ? values[column] : null;
+            if (value == null) {
+                hash = (hash ^ 0xff) * FNV_PRIME;
+                continue;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+            hash = (hash ^ 0x1f) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Low half of the 128-bit row hash, an independent polynomial hash finished with the murmur3 mixer.
+     *
+     * @param values Values of the row
+     * @param width  Number of leading values to hash
+     * @return The low 64 bits of the row hash
+     */
+    public static long hashLow(String[] values, int width) {
+        long hash = 0x9e3779b97f4a7c15L;
+        for (int column = 0; column < width; column++) {
+            String value = column < values.length ? values[column] : null;
+            hash = hash * 0x100000001b3L + (value == null ? -1 : value.hashCode());
+            hash = hash * 31 + (value == null ? 0 : value.length());
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Records a row by its leading values.
+     *
+     * @param values Values of the row
+     * @param width  Number of leading values that identify the row
+     * @return true if no row with the same values was added before
+     */
+    public boolean add(String[] values, int width) {
+        return add(hashHigh(values, width), hashLow(values, width));
+    }
+
+    /**
+     * Records a row by its 128-bit hash.
+     *
+     * @param high High 64 bits of the row hash
+     * @param low  Low 64 bits of the row hash
+     * @return true if the hash was not added before
+     */
+    public boolean add(long high, long low) {
+        if (high == 0 && low == 0) {
+            // 0/0 marks an empty slot
+            low = 1;
+        }
+        if (size + 1 > capacity >> 1) {
+            grow();
+        }
+        if (!insert(table, capacity, high, low)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true once the table has been moved to disk
+     */
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        table = null;
+        if (spillFile != null) {
+            Files.deleteIfExists(spillFile);
+            spillFile = null;
+        }
+    }
+
+    private static boolean insert(LongBuffer table, long capacity, long high, long low) {
+        long mask = capacity - 1;
+        long slot = (high ^ low) & mask;
+        while (true) {
+            int index = (int) (slot * 2);
+            long slotHigh = table.get(index);
+            long slotLow = table.get(index + 1);
+            if (slotHigh == 0 && slotLow == 0) {
+                table.put(index, high);
+                table.put(index + 1, low);
+                return true;
+            }
+            if (slotHigh == high && slotLow == low) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        long newCapacity = capacity << 1;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Too many rows for duplicate detection: " + size);
+        }
+        Path oldSpillFile = spillFile;
+        LongBuffer newTable = allocate(newCapacity);
+        for (int index = 0; index < capacity * 2; index += 2) {
+            long high = table.get(index);
+            long low = table.get(index + 1);
+            if (high != 0 || low != 0) {
+                insert(newTable, newCapacity, high, low);
+            }
+        }
+        table = newTable;
+        capacity = newCapacity;
+        if (oldSpillFile != null && !oldSpillFile.equals(spillFile)) {
+            try {
+                Files.deleteIfExists(oldSpillFile);
+            } catch (IOException ex) {
+                oldSpillFile.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private LongBuffer allocate(long slots) {
+        long bytes = slots * BYTES_PER_SLOT;
+        if (bytes <= memoryBudgetBytes) {
+            return LongBuffer.wrap(new long[(int) (slots * 2)]);
+        }
+        try {
+            spillFile = Files.createTempFile(spillDir, "upload-dedup-", ".tmp");
+            try (FileChannel channel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // A new file reads as zeros, so every slot starts out empty
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to spill duplicate detection to " + spillDir, ex);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.businessadmin.util;
+
+/**
+ * Callback used by the streaming upload readers to hand rows to the caller one at a time.
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+    /**
+     * Handles a single row read from the uploaded file.
+     *
+     * @param rowNum Zero based row number in the file, the header row is row 0
+     * @param values Cell values of the row, missing cells are returned as empty strings
+     */
+    void handleRow(int rowNum, String[] values);
+}
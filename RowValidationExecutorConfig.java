@@ -0,0 +1,21 @@
+package com.businessadmin.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Executor used to validate the rows of bulk uploads in parallel. Validation is CPU bound,
+ * so the parallelism defaults to the number of available cores.
+ */
+@Configuration
+public class RowValidationExecutorConfig {
+
+    @Bean(name = "rowValidationExecutor", destroyMethod = "shutdown")
+    public ForkJoinPool rowValidationExecutor(@Value("${cag.bulk-upload.validation.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+}
@@ -0,0 +1,26 @@
+package com.businessadmin.util;
+
+/**
+ * Callback of {@link SchemaUploadReader}, receiving the header row once and then every data row
+ * with its values in schema order.
+ *
+ * @param <T> Type of the DTO of the schema
+ */
+public interface SchemaRowHandler<T> {
+
+    /**
+     * Handles the header row, usually by binding the upload schema to it.
+     *
+     * @param headers Header cells of the file
+     * @return The schema bound to the file's columns
+     */
+    UploadSchema.BoundSchema<T> handleHeader(String[] headers);
+
+    /**
+     * Handles a data row.
+     *
+     * @param rowNum Zero based row number in the file, the header row is row 0
+     * @param values Values of the schema columns, in schema order
+     */
+    void handleRow(int rowNum, String[] values);
+}
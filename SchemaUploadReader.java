@@ -0,0 +1,62 @@
+package com.businessadmin.util;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads an upload against an {@link UploadSchema}: the first row is handed over as the header, every other
+ * row with only the schema columns, picked by the positions resolved from the header. Shared by all upload
+ * types, so adding one only takes a schema and a row handler.
+ */
+public final class SchemaUploadReader {
+
+    private SchemaUploadReader() {
+    }
+
+    /**
+     * Reads the whole upload in a single pass.
+     *
+     * @param uploadContent Content of the uploaded file, left open for the caller
+     * @param rowHandler    Handler receiving the header and the data rows
+     * @throws IOException If there's an error reading the file
+     * @throws IllegalArgumentException If the file has no header row
+     */
+    public static <T> void read(UploadContent uploadContent, SchemaRowHandler<T> rowHandler) throws IOException {
+        if (uploadContent.getFormat() == UploadContent.Format.CSV) {
+            readCsv(uploadContent, rowHandler);
+        } else {
+            readXlsx(uploadContent, rowHandler);
+        }
+    }
+
+    private static <T> void readCsv(UploadContent uploadContent, SchemaRowHandler<T> rowHandler) throws IOException {
+        // The reader is not closed here so the caller can finish reading the stream
+        CsvTokenizer tokenizer = new CsvTokenizer(new InputStreamReader(uploadContent.getInputStream(), StandardCharsets.UTF_8));
+        if (!tokenizer.nextRecord()) {
+            throw new IllegalArgumentException("File is empty or missing headers");
+        }
+        UploadSchema.BoundSchema<T> schema = rowHandler.handleHeader(tokenizer.getFields(tokenizer.getFieldCount()));
+        int rowNum = 1;
+        while (tokenizer.nextRecord()) {
+            // Only the schema columns are materialized
+            rowHandler.handleRow(rowNum++, schema.project(tokenizer));
+        }
+    }
+
+    private static <T> void readXlsx(UploadContent uploadContent, SchemaRowHandler<T> rowHandler) throws IOException {
+        Object[] schema = new Object[1];
+        StreamingXlsxReader.read(uploadContent.getInputStream(), (rowNum, values) -> {
+            @SuppressWarnings("unchecked")
+            UploadSchema.BoundSchema<T> boundSchema = (UploadSchema.BoundSchema<T>) schema[0];
+            if (boundSchema == null) {
+                schema[0] = rowHandler.handleHeader(values);
+            } else {
+                rowHandler.handleRow(rowNum, boundSchema.project(values));
+            }
+        });
+        if (schema[0] == null) {
+            throw new IllegalArgumentException("File is empty or missing headers");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.businessadmin.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Reference to a blob kept in a {@link BlobStore}.
+ */
+@Getter
+@AllArgsConstructor
+public class StoredBlob {
+
+    private final String sha256;
+    private final long size;
+    private final String location;
+}
@@ -0,0 +1,140 @@
+package com.businessadmin.util;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the first sheet of an .xlsx file with the POI event model (XSSFReader + SAX) instead of
+ * building an XSSFWorkbook, so only the current row and the shared strings table are kept on the heap.
+ */
+public final class StreamingXlsxReader {
+
+    private StreamingXlsxReader() {
+    }
+
+    /**
+     * Reads the first sheet of the given stream and passes every non empty row to the row handler.
+     * The stream is spooled to a temporary file first because the zip container can only be
+     * read randomly from a file without inflating it into memory.
+     *
+     * @param inputStream Stream of the .xlsx file
+     * @param rowHandler  Handler receiving the rows in file order
+     * @throws IOException If there's an error reading the file
+     */
+    public static void read(InputStream inputStream, RowHandler rowHandler) throws IOException {
+        Path spoolFile = Files.createTempFile("xlsx-upload-", ".xlsx");
+        try {
+            Files.copy(inputStream, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+            read(spoolFile.toFile(), rowHandler);
+        } finally {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+    /**
+     * Reads the first sheet of the given file and passes every non empty row to the row handler.
+     *
+     * @param file       The .xlsx file
+     * @param rowHandler Handler receiving the rows in file order
+     * @throws IOException If there's an error reading the file
+     */
+    public static void read(File file, RowHandler rowHandler) throws IOException {
+        OPCPackage opcPackage = null;
+        try {
+            opcPackage = OPCPackage.open(file, PackageAccess.READ);
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+            StylesTable styles = xssfReader.getStylesTable();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IllegalArgumentException("File is empty or missing headers");
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, sharedStrings,
+                        new RowCollector(rowHandler), new DataFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException ex) {
+            throw new IOException("Unable to read xlsx file: " + ex.getMessage(), ex);
+        } finally {
+            if (opcPackage != null) {
+                opcPackage.revert();
+            }
+        }
+    }
+
+    /**
+     * Collects the cells of the current row and hands the completed row to the row handler.
+     * Rows are padded to the width of the first row so gaps and trailing blank cells are returned as empty strings.
+     */
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final RowHandler rowHandler;
+        private final List<String> cells = new ArrayList<>();
+        private int width;
+        private int currentColumn;
+
+        private RowCollector(RowHandler rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+            currentColumn = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (cells.isEmpty()) {
+                return;
+            }
+            if (width == 0) {
+                width = cells.size();
+            }
+            String[] values = new String[Math.max(width, cells.size())];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = i < cells.size() ? cells.get(i) : "";
+            }
+            rowHandler.handleRow(rowNum, values);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference == null ? currentColumn + 1 : new CellReference(cellReference).getCol();
+            while (cells.size() < column) {
+                cells.add("");
+            }
+            cells.add(formattedValue == null ? "" : formattedValue.trim());
+            currentColumn = column;
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // Header and footer text is not part of the uploaded data
+        }
+    }
+}
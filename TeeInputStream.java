@@ -0,0 +1,70 @@
+package com.businessadmin.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Input stream that copies every byte read from the underlying stream to a sink,
+ * so the raw upload can be stored while it is being parsed.
+ */
+public class TeeInputStream extends FilterInputStream {
+
+    private final OutputStream sink;
+
+    public TeeInputStream(InputStream in, OutputStream sink) {
+        super(in);
+        this.sink = sink;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            sink.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            sink.write(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes still have to reach the sink
+        byte[] buffer = new byte[8192];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Reads the rest of the underlying stream so the sink receives the complete content.
+     *
+     * @throws IOException If there's an error reading the stream
+     */
+    public void drain() throws IOException {
+        byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) != -1) {
+            // Bytes are copied to the sink by read()
+        }
+    }
+}
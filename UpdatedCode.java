@@ -5,97 +5,444 @@ import com.businessadmin.entity.CAGProfileBulkUpload;
 import com.businessadmin.entity.CAGProfileNotes;
 import com.businessadmin.exception.CustomApplicationException;
 import com.businessadmin.repository.CAGProfileBulkUploadRepository;
+import com.businessadmin.repository.CAGProfileBulkWriter;
+import com.businessadmin.repository.CAGProfileBulkWriter.UpsertResult;
 import com.businessadmin.repository.CAGProfileRepository;
+import com.businessadmin.repository.CAGProfileStagingLoader;
 import com.businessadmin.request.cagProfileDetails.CAGProfileBulkUploadDTO;
 import com.businessadmin.request.common.model.SearchInputMetaData;
 import com.businessadmin.response.cagProfileDetails.CAGProfileBulkUploadResponse;
+import com.businessadmin.response.cagProfileDetails.CAGProfilePageResponse;
 import com.businessadmin.response.common.model.ErrorResponse;
 import com.businessadmin.response.common.model.SearchOutputMetaData;
 import com.businessadmin.service.CAGProfileBulkUploadService;
+import com.businessadmin.storage.BlobStore;
+import com.businessadmin.storage.BlobWriter;
+import com.businessadmin.storage.StoredBlob;
+import com.businessadmin.util.ColumnDictionary;
+import com.businessadmin.util.CompiledRowValidator;
+import com.businessadmin.util.ParallelRowValidator;
+import com.businessadmin.util.ParallelRowValidator.RowFailure;
+import com.businessadmin.util.RowDuplicateDetector;
+import com.businessadmin.util.SchemaRowHandler;
+import com.businessadmin.util.SchemaUploadReader;
+import com.businessadmin.util.TeeInputStream;
+import com.businessadmin.util.UploadAdmissionController;
+import com.businessadmin.util.UploadContent;
+import com.businessadmin.util.UploadErrorReportWriter;
+import com.businessadmin.util.UploadFingerprint;
+import com.businessadmin.util.UploadPhase;
+import com.businessadmin.util.UploadProgress;
+import com.businessadmin.util.UploadRejectedException;
+import com.businessadmin.util.UploadSchema;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Validator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class CAGProfileBulkUploadServiceImpl implements CAGProfileBulkUploadService {
 
     private static final String CST_ZONE_ID = "CST";
 
+    private static final String STAGING_ENGINE = "staging";
+
+    // Name of the uploaded file for uploads streamed as the request body
+    private static final String FILE_NAME_HEADER = "X-File-Name";
+
+    // Row numbers of duplicate rows listed in the log
+    private static final int MAX_REPORTED_DUPLICATES = 100;
+
+    // Status of a CAGProfileBulkUpload saved with checkpoints
+    private static final String UPLOAD_STATUS_IN_PROGRESS = "IN_PROGRESS";
+    private static final String UPLOAD_STATUS_COMPLETED = "COMPLETED";
+    private static final String UPLOAD_STATUS_RESUMING = "RESUMING";
+    private static final String UPLOAD_STATUS_ROLLING_BACK = "ROLLING_BACK";
+    private static final String UPLOAD_STATUS_ROLLED_BACK = "ROLLED_BACK";
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private CAGProfileRepository cagProfileRepository;
 
     @Autowired
     private CAGProfileBulkUploadRepository cagProfileBulkUploadRepository;
 
+    @Autowired
+    private CAGProfileBulkWriter cagProfileBulkWriter;
+
     @Autowired
     private Validator validator;
 
-    // Expected headers for the file
-    private static final List<String> EXPECTED_HEADERS = Arrays.asList(
-            "carrierid", "accountid", "groupid", "plantype", "mailorderpharmacy", 
-            "prospectclient", "editmember", "entitlements", "accesserrormessage", "notes"
-    );
+    @Autowired
+    @Qualifier("rowValidationExecutor")
+    private Executor rowValidationExecutor;
+
+    @Value("${cag.bulk-upload.validation.batch-size:1000}")
+    private int validationBatchSize;
+
+    // When enabled every row is validated and all errors are written to an error report,
+    // instead of rejecting the upload at the first invalid row
+    @Value("${cag.bulk-upload.validation.collect-all-errors:false}")
+    private boolean collectAllErrors;
+
+    @Autowired
+    private UploadErrorReportService uploadErrorReportService;
+
+    // When enabled profiles are matched on carrierId, accountId and groupId and only new
+    // or changed profiles are written, instead of inserting every row
+    @Value("${cag.bulk-upload.upsert:false}")
+    private boolean upsert;
+
+    // "staging" loads new profiles through a staging table with set based INSERT ... SELECT,
+    // "jpa" persists them through the EntityManager in chunks
+    @Value("${cag.bulk-upload.engine:jpa}")
+    private String persistenceEngine;
+
+    @Autowired
+    private CAGProfileStagingLoader cagProfileStagingLoader;
+
+    // When enabled the upload response only carries counts, the upload id and timings; the saved
+    // profiles are fetched page by page with getCagProfilesByUpload()
+    @Value("${cag.bulk-upload.response.summary-only:false}")
+    private boolean summaryOnly;
+
+    // Heap the in-file duplicate detection may use before it spills to a memory-mapped file
+    @Value("${cag.bulk-upload.dedup.memory-budget-bytes:67108864}")
+    private long dedupMemoryBudgetBytes;
+
+    @Value("${cag.bulk-upload.spool-dir:${java.io.tmpdir}}")
+    private String spoolDir;
+
+    // Largest decompressed size of a gzip or zip upload, guards against decompression bombs
+    @Value("${cag.bulk-upload.max-uncompressed-bytes:1073741824}")
+    private long maxUncompressedBytes;
+
+    // When enabled new profiles are committed in chunks, each recording the last saved row on the
+    // CAGProfileBulkUpload, so an interrupted upload can be continued with resumeUpload()
+    @Value("${cag.bulk-upload.checkpoint.enabled:false}")
+    private boolean checkpointEnabled;
+
+    @Value("${cag.bulk-upload.checkpoint.chunk-rows:5000}")
+    private int checkpointChunkRows;
+
+    // An upload whose heartbeat is older than this is considered abandoned and may be resumed. Must be longer
+    // than committing a chunk, and than parsing the file again before a resumed upload commits its first chunk
+    @Value("${cag.bulk-upload.checkpoint.lease-seconds:600}")
+    private long checkpointLeaseSeconds;
+
+    // Renews the heartbeat of uploads saved in a single transaction, which commit no checkpoints to renew it
+    private ScheduledExecutorService heartbeatExecutor;
+
+    // Profiles deleted per transaction when an upload is rolled back
+    @Value("${cag.bulk-upload.rollback.chunk-rows:5000}")
+    private int rollbackChunkRows;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private UploadFingerprintIndex uploadFingerprintIndex;
+
+    @Autowired
+    private UploadMetrics uploadMetrics;
+
+    @Autowired
+    private UploadAdmissionController uploadAdmissionController;
+
+    @Autowired
+    private ReferenceDataValidator referenceDataValidator;
+
+    @PostConstruct
+    public void start() {
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+    }
+
+    // Columns of the file and the DTO property bound to each; rows are handed over in this order
+    // whatever the column order of the file is. Also the column layout of the profile export
+    static final UploadSchema<CAGProfileBulkUploadDTO.CAGProfileBulkUploadDTOBuilder, CAGProfileBulkUploadDTO> UPLOAD_SCHEMA =
+            UploadSchema.forBuilder(CAGProfileBulkUploadDTO.CAGProfileBulkUploadDTOBuilder.class,
+                            CAGProfileBulkUploadDTO::builder, CAGProfileBulkUploadDTO.CAGProfileBulkUploadDTOBuilder::build)
+                    .column("carrierid", "carrierId")
+                    .column("accountid", "accountId")
+                    .column("groupid", "groupId")
+                    .column("plantype", "planType")
+                    .column("mailorderpharmacy", "mailOrderPharmacy")
+                    .column("prospectclient", "prospectClient")
+                    .column("editmember", "editMember")
+                    .column("entitlements", "entitlements")
+                    .column("accesserrormessage", "accessErrorMessage")
+                    .column("notes", "notes")
+                    .build();
+
+    // Columns that only take a few distinct values
+    private static final int[] LOW_CARDINALITY_COLUMNS = UPLOAD_SCHEMA.indexesOf("planType", "mailOrderPharmacy", "prospectClient",
+            "editMember", "entitlements");
+
+    // Distinct values canonicalized per column before the column is treated as high cardinality
+    private static final int MAX_DICTIONARY_ENTRIES = 1024;
+
+    // DTO constraints compiled once into a check chain over the raw column values
+    private static final CompiledRowValidator ROW_RULES = CompiledRowValidator.compile(CAGProfileBulkUploadDTO.class, UPLOAD_SCHEMA.getProperties());
 
     private final Logger logger = LogManager.getLogger(this.getClass());
 
     @Override
     public CAGProfileBulkUploadResponse saveCagProfileByBulkUpload(MultipartFile file, SearchInputMetaData searchInputMetaData) throws IOException {
         logger.info("Start of saveCagProfileByBulkUpload() : CAGProfileBulkUploadServiceImpl, File Name: {}", file.getOriginalFilename());
+        CAGProfileBulkUploadResponse cagProfileDetailsResponse;
+        UploadFingerprint fingerprint;
+        try (InputStream inputStream = file.getInputStream()) {
+            fingerprint = UploadFingerprint.of(inputStream);
+        }
+        try (InputStream inputStream = file.getInputStream()) {
+            cagProfileDetailsResponse = processUpload(inputStream, file.getOriginalFilename(), file.getContentType(),
+                    fingerprint, searchInputMetaData, new UploadProgress(file.getSize()));
+        }
+        logger.info("End of saveCagProfileByBulkUpload() : CAGProfileBulkUploadServiceImpl");
+        return cagProfileDetailsResponse;
+    }
 
-        // Step 1: Validate file headers
-        validateFileHeaders(file);
+    /**
+     * Validates and saves a file sent as the raw request body, reading it straight from the servlet input stream.
+     * Unlike a multipart upload nothing is buffered before the service is called, so rows are parsed and validated
+     * while the rest of the file is still being received. The file name is taken from the X-File-Name header
+     * (URL encoded) or the fileName request parameter.
+     * XLSX files are still spooled by the reader, because the zip container can't be read front to back.
+     *
+     * @param request             Request carrying the file as its body
+     * @param searchInputMetaData Search input metadata
+     * @return The bulk upload response
+     * @throws IOException If there's an error reading the request body
+     */
+    public CAGProfileBulkUploadResponse saveCagProfileByStream(HttpServletRequest request, SearchInputMetaData searchInputMetaData) throws IOException {
+        String fileName = request.getHeader(FILE_NAME_HEADER);
+        fileName = StringUtils.hasText(fileName) ? URLDecoder.decode(fileName, StandardCharsets.UTF_8) : request.getParameter("fileName");
+        logger.info("Start of saveCagProfileByStream() : CAGProfileBulkUploadServiceImpl, File Name: {}", fileName);
+        if (!StringUtils.hasText(fileName)) {
+            throw new IllegalArgumentException("File name is missing, send it in the " + FILE_NAME_HEADER + " header");
+        }
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.toLowerCase().startsWith("multipart/")) {
+            throw new IllegalArgumentException("Multipart requests are not supported, send the file as the request body");
+        }
+        CAGProfileBulkUploadResponse cagProfileDetailsResponse;
+        try (InputStream inputStream = request.getInputStream()) {
+            // The fingerprint is only known once the body has been read, see processUpload()
+            cagProfileDetailsResponse = processUpload(inputStream, fileName, contentType, null,
+                    searchInputMetaData, new UploadProgress(request.getContentLengthLong()));
+        }
+        logger.info("End of saveCagProfileByStream() : CAGProfileBulkUploadServiceImpl");
+        return cagProfileDetailsResponse;
+    }
+
+    /**
+     * Reserves heap for an upload with the admission controller, waiting while other uploads hold the budget.
+     *
+     * @param fileName            Name of the uploaded file
+     * @param kind                Format and compression of the upload, detected from its content
+     * @param sizeBytes           Size of the uploaded file, or -1 if unknown
+     * @param searchInputMetaData Search input metadata
+     * @return The admission permit, to be closed once the upload is done
+     */
+    private UploadAdmissionController.Permit admit(String fileName, UploadContent.Kind kind, long sizeBytes,
+                                                   SearchInputMetaData searchInputMetaData) {
+        try {
+            return uploadAdmissionController.admit(searchInputMetaData.getUserId(), fileName, kind, sizeBytes);
+        } catch (UploadRejectedException ex) {
+            logger.error("Upload {} not admitted: {}", fileName, ex.getMessage());
+            throw new CustomApplicationException(buildErrorResponse(HttpStatus.valueOf(ex.getStatus()), ex.getMessage(), searchInputMetaData));
+        }
+    }
+
+    /**
+     * Validates and saves an uploaded file read from the given stream. Used for synchronous uploads
+     * and by the upload jobs, which read the file back from their spool file. The upload is admitted
+     * first, on the format detected from its leading bytes and the size given to the progress.
+     *
+     * @param uploadStream        Stream of the uploaded file
+     * @param originalFilename    Original name of the uploaded file
+     * @param contentType         Content type of the uploaded file
+     * @param fingerprint         Fingerprint of the uploaded file computed before it is parsed, or null for a streamed
+     *                            upload, which is then fingerprinted while it is written to the blob store
+     * @param searchInputMetaData Search input metadata
+     * @param progress            Progress of the upload, updated while the file is processed; its total bytes,
+     *                            -1 if unknown, are the size the upload is admitted with
+     * @return The bulk upload response, or the response of the earlier upload if the user already uploaded this file
+     * @throws IOException If there's an error reading the file
+     */
+    public CAGProfileBulkUploadResponse processUpload(InputStream uploadStream, String originalFilename, String contentType, UploadFingerprint fingerprint,
+                                                      SearchInputMetaData searchInputMetaData, UploadProgress progress) throws IOException {
+        InputStream inputStream = new BufferedInputStream(uploadStream);
+        try (UploadAdmissionController.Permit permit = admit(originalFilename, UploadContent.detect(inputStream), progress.getTotalBytes(),
+                searchInputMetaData)) {
+            return processAdmittedUpload(inputStream, originalFilename, contentType, fingerprint, searchInputMetaData, progress);
+        }
+    }
+
+    private CAGProfileBulkUploadResponse processAdmittedUpload(InputStream uploadStream, String originalFilename, String contentType,
+                                                               UploadFingerprint fingerprint, SearchInputMetaData searchInputMetaData,
+                                                               UploadProgress progress) throws IOException {
+        UploadMetrics.Recording recording = uploadMetrics.start();
+        String outcome = "failed";
+        try {
+            CAGProfileBulkUploadResponse cagProfileDetailsResponse = processUpload(uploadStream, originalFilename, contentType, fingerprint,
+                    searchInputMetaData, progress, recording);
+            outcome = cagProfileDetailsResponse.getSearchOutputMetaData().getRespCode();
+            return cagProfileDetailsResponse;
+        } finally {
+            recording.finish(outcome, progress);
+        }
+    }
 
-        // Step 2: Validate file content
-        Set<CAGProfileBulkUploadDTO> cagProfileBulkUploadDTOs = validateFileContent(file);
+    private CAGProfileBulkUploadResponse processUpload(InputStream uploadStream, String originalFilename, String contentType, UploadFingerprint fingerprint,
+                                                       SearchInputMetaData searchInputMetaData, UploadProgress progress,
+                                                       UploadMetrics.Recording recording) throws IOException {
+        Objects.requireNonNull(originalFilename);
 
-        // Step 3: Process and save profiles
+        // Step 0: Return the earlier result if the same user already uploaded this file
+        if (fingerprint != null) {
+            CAGProfileBulkUploadResponse previousResponse = findPreviousUpload(originalFilename, fingerprint, searchInputMetaData, progress);
+            if (previousResponse != null) {
+                return previousResponse;
+            }
+        }
         LocalDateTime cstLocalDateTime = LocalDateTime.now(ZoneId.of(CST_ZONE_ID));
-        Set<CAGProfile> cagProfiles = new HashSet<>();
-        for (CAGProfileBulkUploadDTO dto : cagProfileBulkUploadDTOs) {
-            CAGProfile cagProfile = convertToEntity(dto, searchInputMetaData, Timestamp.valueOf(cstLocalDateTime));
-            cagProfiles.add(cagProfile);
+
+        // Step 1: Read the file once, validating the header and then validating and converting
+        // each row, while the raw bytes are streamed to the blob store
+        progress.setPhase(UploadPhase.PARSING);
+        long parseStart = System.nanoTime();
+        UploadRowHandler rowHandler;
+        StoredBlob storedBlob;
+        try (BlobWriter blobWriter = blobStore.openWriter();
+             TeeInputStream inputStream = new TeeInputStream(progress.track(uploadStream),
+                     recording.timeWrites(blobWriter, UploadMetrics.STAGE_BLOB_WRITE))) {
+            // The blob store keeps the file as uploaded, compressed uploads are only decompressed for parsing
+            try (UploadContent uploadContent = UploadContent.open(inputStream, maxUncompressedBytes)) {
+                String fileType = uploadContent.getFormat().name().toLowerCase()
+                        + (uploadContent.getCompression() == null ? "" : "." + uploadContent.getCompression());
+                logger.info("File {} detected as {}", originalFilename, fileType);
+                recording.setFileType(fileType);
+                rowHandler = processFileContent(uploadContent, searchInputMetaData, Timestamp.valueOf(cstLocalDateTime), progress, recording, 0);
+            }
+            inputStream.drain();
+            recording.addTime(UploadMetrics.STAGE_PARSE, System.nanoTime() - parseStart);
+            if (rowHandler.rowsFailed > 0) {
+                progress.setPhase(UploadPhase.FAILED);
+                return buildRejectedResponse(originalFilename, contentType, progress.getBytesRead(), rowHandler, searchInputMetaData);
+            }
+            long commitStart = System.nanoTime();
+            storedBlob = blobWriter.commit();
+            recording.addTime(UploadMetrics.STAGE_BLOB_WRITE, System.nanoTime() - commitStart);
         }
+        if (fingerprint == null) {
+            fingerprint = UploadFingerprint.of(storedBlob.getSha256(), storedBlob.getSize());
+            CAGProfileBulkUploadResponse previousResponse = findPreviousUpload(originalFilename, fingerprint, searchInputMetaData, progress);
+            if (previousResponse != null) {
+                return previousResponse;
+            }
+        }
+        List<CAGProfile> cagProfiles = rowHandler.cagProfiles;
 
+        long parseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parseStart);
+
+        // Step 2: Save profiles and the uploaded file
+        progress.setPhase(UploadPhase.PERSISTING);
+        long persistStart = System.nanoTime();
         CAGProfileBulkUpload uploadedFile = null;
+        UpsertResult upsertResult = null;
+
+        boolean checkpointed = checkpointEnabled && !upsert && !STAGING_ENGINE.equals(persistenceEngine);
 
         try {
-            if (!cagProfiles.isEmpty()) {
-                cagProfiles.forEach(cagProfile -> {
-                    if (cagProfile.getCagProfileNotes() != null) {
-                        cagProfile.getCagProfileNotes().forEach(notes -> notes.setCagProfile(cagProfile));
+            // The upload is saved first so every profile can record the upload that created it,
+            // and in checkpoint mode every chunk its checkpoint
+            uploadedFile = CAGProfileBulkUpload.builder()
+                    .fileName(originalFilename)
+                    .fileHash(storedBlob.getSha256())
+                    .fileSize(storedBlob.getSize())
+                    .fileLocation(storedBlob.getLocation())
+                    .uploadStatus(UPLOAD_STATUS_IN_PROGRESS)
+                    .checkpointed(checkpointed)
+                    .lastCommittedRow(0)
+                    .heartbeatAt(new Timestamp(System.currentTimeMillis()))
+                    .userIdCreated(searchInputMetaData.getUserId())
+                    .dateTimeCreated(Timestamp.valueOf(cstLocalDateTime))
+                    .build();
+            cagProfileBulkUploadRepository.save(uploadedFile);
+            Integer uploadId = uploadedFile.getFileId();
+            cagProfiles.forEach(cagProfile -> {
+                cagProfile.setUploadId(uploadId);
+                if (cagProfile.getCagProfileNotes() != null) {
+                    cagProfile.getCagProfileNotes().forEach(notes -> notes.setCagProfile(cagProfile));
+                }
+            });
+            if (checkpointed) {
+                persistWithCheckpoints(rowHandler, uploadId);
+            } else {
+                // Nothing is committed before the transaction ends, the heartbeat is renewed while it runs
+                ScheduledFuture<?> heartbeat = scheduleHeartbeat(uploadId);
+                try {
+                    if (!cagProfiles.isEmpty()) {
+                        if (upsert) {
+                            upsertResult = cagProfileBulkWriter.upsertAll(cagProfiles);
+                        } else if (STAGING_ENGINE.equals(persistenceEngine)) {
+                            cagProfileStagingLoader.load(cagProfiles, searchInputMetaData.getUserId(), Timestamp.valueOf(cstLocalDateTime), uploadId);
+                        } else {
+                            cagProfileBulkWriter.saveAll(cagProfiles);
+                        }
                     }
-                });
-                cagProfileRepository.saveAll(cagProfiles);
-            }
-
-            if (!file.isEmpty()) {
-                uploadedFile = CAGProfileBulkUpload.builder()
-                        .fileName(file.getOriginalFilename())
-                        .fileData(file.getBytes())
-                        .userIdCreated(searchInputMetaData.getUserId())
-                        .dateTimeCreated(Timestamp.valueOf(cstLocalDateTime))
-                        .build();
-                cagProfileBulkUploadRepository.save(uploadedFile);
+                } finally {
+                    heartbeat.cancel(false);
+                }
+                cagProfileBulkWriter.updateUploadStatus(uploadId, UPLOAD_STATUS_COMPLETED);
             }
         } catch (Exception ex) {
-            logger.error("Error in saveCagProfileByBulkUpload() : CAGProfileBulkUploadServiceImpl", ex);
+            logger.error("Error in processUpload() : CAGProfileBulkUploadServiceImpl", ex);
+            if (uploadedFile != null && uploadedFile.getFileId() != null && !checkpointed) {
+                // The profiles were written in one transaction and rolled back with it, only the upload is left
+                cagProfileBulkUploadRepository.deleteById(uploadedFile.getFileId());
+            }
             ErrorResponse errorResponse = ErrorResponse.builder()
                     .timestamp(LocalDateTime.now())
                     .endpoint("/cagBulkUpload")
@@ -107,7 +454,11 @@ public class CAGProfileBulkUploadServiceImpl implements CAGProfileBulkUploadServ
             throw new CustomApplicationException(errorResponse);
         }
 
-        // Step 4: Prepare and return response
+        long persistNanos = System.nanoTime() - persistStart;
+        recording.addTime(UploadMetrics.STAGE_PERSIST, persistNanos);
+        long persistMillis = TimeUnit.NANOSECONDS.toMillis(persistNanos);
+
+        // Step 3: Prepare and return response
         CAGProfileBulkUploadResponse cagProfileDetailsResponse = new CAGProfileBulkUploadResponse();
         SearchOutputMetaData searchOutputMetaData = SearchOutputMetaData.builder()
                 .respCode(String.valueOf(HttpStatus.CREATED.value()))
@@ -115,196 +466,439 @@ public class CAGProfileBulkUploadServiceImpl implements CAGProfileBulkUploadServ
                 .respMessage(List.of("CAG Profile Details saved successfully"))
                 .build();
         cagProfileDetailsResponse.setSearchOutputMetaData(searchOutputMetaData);
-        cagProfileDetailsResponse.setCagProfiles(cagProfiles);
-        cagProfileDetailsResponse.setFileName(Objects.requireNonNull(uploadedFile).getFileName());
-        cagProfileDetailsResponse.setFileType(file.getContentType());
-        cagProfileDetailsResponse.setFileSize(String.valueOf(file.getSize()));
+        if (!summaryOnly) {
+            cagProfileDetailsResponse.setCagProfiles(identitySetOf(cagProfiles));
+        }
+        cagProfileDetailsResponse.setUploadId(uploadedFile.getFileId());
+        cagProfileDetailsResponse.setFileName(uploadedFile.getFileName());
+        cagProfileDetailsResponse.setFileType(contentType);
+        cagProfileDetailsResponse.setFileSize(String.valueOf(storedBlob.getSize()));
         cagProfileDetailsResponse.setFileCreated("File created successfully");
-
-        logger.info("End of saveCagProfileByBulkUpload() : CAGProfileBulkUploadServiceImpl");
+        cagProfileDetailsResponse.setRowsProcessed(rowHandler.rowsRead);
+        cagProfileDetailsResponse.setRowsFailed(0);
+        cagProfileDetailsResponse.setRowsDuplicate(rowHandler.rowsDuplicate);
+        if (upsertResult != null) {
+            // Rows superseded by a later row with the same key were not written either
+            cagProfileDetailsResponse.setRowsDuplicate(rowHandler.rowsDuplicate + upsertResult.getSuperseded());
+            cagProfileDetailsResponse.setRowsInserted(upsertResult.getInserted());
+            cagProfileDetailsResponse.setRowsUpdated(upsertResult.getUpdated());
+            cagProfileDetailsResponse.setRowsUnchanged(upsertResult.getUnchanged());
+        }
+        cagProfileDetailsResponse.setParseTimeMillis(parseMillis);
+        cagProfileDetailsResponse.setPersistTimeMillis(persistMillis);
+        progress.setPhase(UploadPhase.COMPLETED);
         return cagProfileDetailsResponse;
     }
 
     /**
-     * Validates the headers of the uploaded file.
+     * Renews the heartbeat of an upload every third of cag.bulk-upload.checkpoint.lease-seconds until the
+     * returned future is cancelled.
      *
-     * @param file Multipart file to be validated
-     * @throws IOException If there's an error reading the file
+     * @param uploadId Id of the CAGProfileBulkUpload being saved
+     * @return The scheduled renewal
      */
-    private void validateFileHeaders(MultipartFile file) throws IOException {
-        String fileName = Objects.requireNonNull(file.getOriginalFilename()).toLowerCase();
-        if (fileName.endsWith(".csv")) {
-            validateCsvFileHeaders(file);
-        } else if (fileName.endsWith(".xlsx")) {
-            validateXlsxHeaders(file);
-        } else {
-            throw new IllegalArgumentException("Unsupported file type: " + fileName);
-        }
+    private ScheduledFuture<?> scheduleHeartbeat(Integer uploadId) {
+        long periodSeconds = Math.max(1, checkpointLeaseSeconds / 3);
+        return heartbeatExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                cagProfileBulkWriter.renewHeartbeat(uploadId);
+            } catch (RuntimeException ex) {
+                // Retried with the next renewal, the lease outlasts a couple of failures
+                logger.warn("Unable to renew the heartbeat of upload {}", uploadId, ex);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
     }
 
     /**
-     * Validates the headers of a CSV file.
+     * Looks up an earlier upload of the same file by the same user. A completed upload is returned with 200,
+     * one still being saved with 202, and an interrupted one that can be continued with {@link #resumeUpload}
+     * with 409 naming the upload to resume.
      *
-     * @param file Multipart file to be validated
-     * @throws IOException If there's an error reading the file
+     * @param originalFilename    Original name of the uploaded file
+     * @param fingerprint         Fingerprint of the uploaded file
+     * @param searchInputMetaData Search input metadata
+     * @param progress            Progress of the upload, completed if an earlier upload is found
+     * @return A response carrying the id and status of the earlier upload, or null if the file wasn't uploaded before
      */
-    private void validateCsvFileHeaders(MultipartFile file) throws IOException {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            String headerLine = br.readLine();
-            if (headerLine == null) {
-                throw new IllegalArgumentException("File is empty or missing headers");
-            }
-
-            String[] headers = Arrays.stream(headerLine.split(","))
-                    .map(String::toLowerCase)
-                    .map(String::trim)
-                    .toArray(String[]::new);
-            validateHeaders(headers);
+    private CAGProfileBulkUploadResponse findPreviousUpload(String originalFilename, UploadFingerprint fingerprint,
+                                                            SearchInputMetaData searchInputMetaData, UploadProgress progress) {
+        CAGProfileBulkUpload previousUpload = uploadFingerprintIndex.find(searchInputMetaData.getUserId(), fingerprint,
+                LocalDateTime.now(ZoneId.of(CST_ZONE_ID)));
+        if (previousUpload == null) {
+            return null;
+        }
+        logger.info("File {} was already uploaded by user {} (sha256 {}) as upload {}, status {}", originalFilename,
+                searchInputMetaData.getUserId(), fingerprint.getSha256(), previousUpload.getFileId(), previousUpload.getUploadStatus());
+        HttpStatus status;
+        String message;
+        if (UPLOAD_STATUS_COMPLETED.equals(previousUpload.getUploadStatus())) {
+            status = HttpStatus.OK;
+            message = "File was already uploaded, returning the earlier upload";
+        } else if (uploadFingerprintIndex.isAlive(previousUpload)) {
+            status = HttpStatus.ACCEPTED;
+            message = "File is already being uploaded, status " + previousUpload.getUploadStatus();
+        } else {
+            status = HttpStatus.CONFLICT;
+            message = "An earlier upload " + previousUpload.getFileId() + " of this file was interrupted after row "
+                    + (previousUpload.getLastCommittedRow() == null ? 0 : previousUpload.getLastCommittedRow())
+                    + ", resume it instead of uploading the file again";
         }
+        SearchOutputMetaData searchOutputMetaData = SearchOutputMetaData.builder()
+                .respCode(String.valueOf(status.value()))
+                .correlationId(searchInputMetaData.getCorrelationId())
+                .respMessage(List.of(message))
+                .build();
+        CAGProfileBulkUploadResponse previousResponse = new CAGProfileBulkUploadResponse();
+        previousResponse.setSearchOutputMetaData(searchOutputMetaData);
+        previousResponse.setUploadId(previousUpload.getFileId());
+        previousResponse.setFileName(previousUpload.getFileName());
+        previousResponse.setFileSize(String.valueOf(previousUpload.getFileSize()));
+        progress.setPhase(UploadPhase.COMPLETED);
+        return previousResponse;
     }
 
     /**
-     * Validates the headers of an Excel (.xlsx) file.
+     * Continues an upload that was interrupted while its profiles were saved with checkpoints. Uploads saved in
+     * a single transaction, upserts and staging loads included, are rejected: they left no partial rows to continue
+     * from and replaying them as plain inserts would duplicate profiles. The upload is claimed first, which only succeeds once its heartbeat is older than cag.bulk-upload.checkpoint.lease-seconds,
+     * so neither the original request nor a concurrent resume can still be saving it. The stored file
+     * is read again, rows up to the last checkpoint are skipped without being validated or converted,
+     * and the remaining rows are saved in chunks from there. A resume that fails leaves the upload
+     * RESUMING, and it can be resumed again once the lease has expired.
      *
-     * @param file Multipart file to be validated
-     * @throws IOException If there's an error reading the file
+     * @param uploadId            Id of the interrupted CAGProfileBulkUpload
+     * @param searchInputMetaData Search input metadata, the user has to be the one who started the upload
+     * @return The bulk upload response for the rows saved by the resumed upload
+     * @throws IOException If the stored file could not be read
      */
-    private void validateXlsxHeaders(MultipartFile file) throws IOException {
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Row headerRow = sheet.getRow(0);
-            if (headerRow == null) {
-                throw new IllegalArgumentException("File is empty or missing headers");
+    public CAGProfileBulkUploadResponse resumeUpload(Integer uploadId, SearchInputMetaData searchInputMetaData) throws IOException {
+        logger.info("Start of resumeUpload() : CAGProfileBulkUploadServiceImpl, Upload Id: {}", uploadId);
+        CAGProfileBulkUpload upload = cagProfileBulkUploadRepository.findById(uploadId).orElseThrow(() ->
+                new CustomApplicationException(buildErrorResponse(HttpStatus.NOT_FOUND, "Upload not found: " + uploadId, searchInputMetaData)));
+        if (!UPLOAD_STATUS_IN_PROGRESS.equals(upload.getUploadStatus()) && !UPLOAD_STATUS_RESUMING.equals(upload.getUploadStatus())) {
+            throw new CustomApplicationException(buildErrorResponse(HttpStatus.CONFLICT,
+                    "Upload " + uploadId + " is not interrupted, nothing to resume", searchInputMetaData));
+        }
+        if (!Objects.equals(upload.getUserIdCreated(), searchInputMetaData.getUserId())) {
+            throw new CustomApplicationException(buildErrorResponse(HttpStatus.FORBIDDEN,
+                    "Upload " + uploadId + " can only be resumed by the user who started it", searchInputMetaData));
+        }
+        if (!Boolean.TRUE.equals(upload.getCheckpointed())) {
+            throw new CustomApplicationException(buildErrorResponse(HttpStatus.CONFLICT,
+                    "Upload " + uploadId + " was not saved with checkpoints and cannot be resumed, roll it back and upload the file again",
+                    searchInputMetaData));
+        }
+        Timestamp staleBefore = new Timestamp(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(checkpointLeaseSeconds));
+        if (!cagProfileBulkWriter.claimUpload(uploadId, List.of(), List.of(UPLOAD_STATUS_IN_PROGRESS, UPLOAD_STATUS_RESUMING),
+                UPLOAD_STATUS_RESUMING, staleBefore)) {
+            throw new CustomApplicationException(buildErrorResponse(HttpStatus.CONFLICT,
+                    "Upload " + uploadId + " is still being saved, retry once it has been idle for "
+                            + checkpointLeaseSeconds + " seconds", searchInputMetaData));
+        }
+        // Read after the claim, the checkpoint may have moved since the upload was loaded
+        upload = cagProfileBulkUploadRepository.findById(uploadId).orElseThrow(() ->
+                new CustomApplicationException(buildErrorResponse(HttpStatus.NOT_FOUND, "Upload not found: " + uploadId, searchInputMetaData)));
+        UploadContent.Kind kind;
+        try (InputStream inputStream = new BufferedInputStream(blobStore.open(upload.getFileLocation()))) {
+            kind = UploadContent.detect(inputStream);
+        }
+        try (UploadAdmissionController.Permit permit = admit(upload.getFileName(), kind, upload.getFileSize(), searchInputMetaData)) {
+            return resumeAdmittedUpload(upload, searchInputMetaData);
+        }
+    }
+
+    private CAGProfileBulkUploadResponse resumeAdmittedUpload(CAGProfileBulkUpload upload, SearchInputMetaData searchInputMetaData)
+            throws IOException {
+        Integer uploadId = upload.getFileId();
+        int resumeAfterRow = upload.getLastCommittedRow() == null ? 0 : upload.getLastCommittedRow();
+        logger.info("Resuming upload {} of file {} after row {}", uploadId, upload.getFileName(), resumeAfterRow);
+
+        UploadProgress progress = new UploadProgress(upload.getFileSize());
+        UploadMetrics.Recording recording = uploadMetrics.start();
+        String outcome = "failed";
+        try {
+            progress.setPhase(UploadPhase.PARSING);
+            long parseStart = System.nanoTime();
+            UploadRowHandler rowHandler;
+            try (InputStream inputStream = progress.track(blobStore.open(upload.getFileLocation()));
+                 UploadContent uploadContent = UploadContent.open(inputStream, maxUncompressedBytes)) {
+                recording.setFileType(uploadContent.getFormat().name().toLowerCase()
+                        + (uploadContent.getCompression() == null ? "" : "." + uploadContent.getCompression()));
+                // Profiles keep the user and timestamp of the original upload, which tie them to it
+                rowHandler = processFileContent(uploadContent, searchInputMetaData, upload.getDateTimeCreated(), progress, recording, resumeAfterRow);
+            }
+            recording.addTime(UploadMetrics.STAGE_PARSE, System.nanoTime() - parseStart);
+            if (rowHandler.rowsFailed > 0) {
+                progress.setPhase(UploadPhase.FAILED);
+                return buildRejectedResponse(upload.getFileName(), null, upload.getFileSize(), rowHandler, searchInputMetaData);
             }
 
-            List<String> headers = new ArrayList<>();
-            for (int i = 0; i < headerRow.getPhysicalNumberOfCells(); i++) {
-                headers.add(headerRow.getCell(i).getStringCellValue().toLowerCase().trim());
+            progress.setPhase(UploadPhase.PERSISTING);
+            long persistStart = System.nanoTime();
+            rowHandler.cagProfiles.forEach(cagProfile -> {
+                cagProfile.setUploadId(uploadId);
+                if (cagProfile.getCagProfileNotes() != null) {
+                    cagProfile.getCagProfileNotes().forEach(notes -> notes.setCagProfile(cagProfile));
+                }
+            });
+            try {
+                persistWithCheckpoints(rowHandler, uploadId);
+            } catch (Exception ex) {
+                logger.error("Error in resumeUpload() : CAGProfileBulkUploadServiceImpl", ex);
+                throw new CustomApplicationException(buildErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), searchInputMetaData));
             }
+            recording.addTime(UploadMetrics.STAGE_PERSIST, System.nanoTime() - persistStart);
 
-            validateHeaders(headers.toArray(new String[0]));
+            CAGProfileBulkUploadResponse cagProfileDetailsResponse = new CAGProfileBulkUploadResponse();
+            SearchOutputMetaData searchOutputMetaData = SearchOutputMetaData.builder()
+                    .respCode(String.valueOf(HttpStatus.CREATED.value()))
+                    .correlationId(searchInputMetaData.getCorrelationId())
+                    .respMessage(List.of("CAG Profile Details upload resumed after row " + resumeAfterRow + " and saved successfully"))
+                    .build();
+            cagProfileDetailsResponse.setSearchOutputMetaData(searchOutputMetaData);
+            cagProfileDetailsResponse.setUploadId(uploadId);
+            cagProfileDetailsResponse.setFileName(upload.getFileName());
+            cagProfileDetailsResponse.setFileSize(String.valueOf(upload.getFileSize()));
+            cagProfileDetailsResponse.setRowsProcessed(rowHandler.rowsRead);
+            cagProfileDetailsResponse.setRowsFailed(0);
+            cagProfileDetailsResponse.setRowsDuplicate(rowHandler.rowsDuplicate);
+            progress.setPhase(UploadPhase.COMPLETED);
+            outcome = searchOutputMetaData.getRespCode();
+            logger.info("End of resumeUpload() : CAGProfileBulkUploadServiceImpl");
+            return cagProfileDetailsResponse;
+        } finally {
+            recording.finish(outcome, progress);
         }
     }
 
     /**
-     * Validates if the headers of the uploaded file match the expected headers.
+     * Saves the converted profiles in chunks of cag.bulk-upload.checkpoint.chunk-rows. Every chunk is committed
+     * together with the file row number of its last profile and a new heartbeat, then the upload is marked completed.
+     * <p>
+     * Checkpoints only cover this persist phase: it starts once the whole file has been parsed and validated,
+     * and the upload row is only saved then. An upload interrupted while its file is parsed leaves nothing to
+     * resume and has to be submitted again, and a resumed upload parses the file again before it saves anything.
      *
-     * @param headers Array of headers from the uploaded file
+     * @param rowHandler Row handler holding the profiles in file order
+     * @param uploadId   Id of the CAGProfileBulkUpload recording the checkpoints
      */
-    private void validateHeaders(String[] headers) {
-        List<String> missingHeaders = new ArrayList<>();
-        for (String expectedHeader : EXPECTED_HEADERS) {
-            if (!Arrays.asList(headers).contains(expectedHeader)) {
-                missingHeaders.add(expectedHeader);
-            }
-        }
-        if (!missingHeaders.isEmpty()) {
-            logger.error("Missing or incorrect headers: {}", String.join(", ", missingHeaders));
-            throw new IllegalArgumentException("Missing or incorrect headers: " + String.join(", ", missingHeaders));
+    private void persistWithCheckpoints(UploadRowHandler rowHandler, Integer uploadId) {
+        List<CAGProfile> cagProfiles = rowHandler.cagProfiles;
+        for (int from = 0; from < cagProfiles.size(); from += checkpointChunkRows) {
+            int to = Math.min(from + checkpointChunkRows, cagProfiles.size());
+            int lastRowNum = rowHandler.profileRowNums[to - 1];
+            cagProfileBulkWriter.saveChunkWithCheckpoint(cagProfiles.subList(from, to), uploadId, lastRowNum);
+            logger.info("Upload {} committed through row {}", uploadId, lastRowNum);
         }
+        cagProfileBulkWriter.updateUploadStatus(uploadId, UPLOAD_STATUS_COMPLETED);
     }
 
     /**
-     * Validates the content of the uploaded file.
+     * Deletes an upload together with the profiles and notes it created, see {@link #rollbackUpload}. Profiles
+     * an upsert only updated keep the upload that created them and are not deleted. The stored file is kept,
+     * since identical files share one blob.
      *
-     * @param file Multipart file to be validated
-     * @return A set of CAGProfileBulkUploadDTO
-     * @throws IOException If there's an error reading the file
+     * @param fileId              Id of the CAGProfileBulkUpload
+     * @param searchInputMetaData Search input metadata
      */
-    private Set<CAGProfileBulkUploadDTO> validateFileContent(MultipartFile file) throws IOException {
-        logger.info("Start of validateFileContent() : CAGProfileBulkUploadServiceImpl");
-        Set<CAGProfileBulkUploadDTO> cagProfileBulkUploadDTOs;
-
-        String fileName = Objects.requireNonNull(file.getOriginalFilename()).toLowerCase();
-        if (fileName.endsWith(".csv")) {
-            cagProfileBulkUploadDTOs = validateCsvFile(file);
-        } else if (fileName.endsWith(".xlsx")) {
-            cagProfileBulkUploadDTOs = validateXlsxFile(file);
-        } else {
-            throw new IllegalArgumentException("Unsupported file type: " + fileName);
-        }
-
-        logger.info("End of validateFileContent() : CAGProfileBulkUploadServiceImpl");
-        return cagProfileBulkUploadDTOs;
+    public void deleteFile(Integer fileId, SearchInputMetaData searchInputMetaData) {
+        logger.info("Start of deleteFile() : CAGProfileBulkUploadServiceImpl, Upload Id: {}", fileId);
+        int deleted = rollbackUpload(fileId, searchInputMetaData);
+        cagProfileBulkUploadRepository.deleteById(fileId);
+        logger.info("End of deleteFile() : CAGProfileBulkUploadServiceImpl, Profiles deleted: {}", deleted);
     }
-/**
-     * Validates the content of a CSV file.
+
+    /**
+     * Deletes the profiles and notes created by an upload in chunks of cag.bulk-upload.rollback.chunk-rows,
+     * each committed on its own. The upload is claimed first, like {@link #resumeUpload}: a completed upload
+     * right away, one that is still being saved or rolled back only once its heartbeat is older than
+     * cag.bulk-upload.checkpoint.lease-seconds. An interrupted rollback can simply be run again.
      *
-     * @param file Multipart file to be validated
-     * @return A set of CAGProfileBulkUploadDTO
-     * @throws IOException If there's an error reading the file
+     * @param uploadId            Id of the CAGProfileBulkUpload
+     * @param searchInputMetaData Search input metadata
+     * @return The number of profiles deleted
      */
-    private Set<CAGProfileBulkUploadDTO> validateCsvFile(MultipartFile file) throws IOException {
-        Set<CAGProfileBulkUploadDTO> cagProfileBulkUploadDtos = new HashSet<>();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            br.readLine(); // Skip header line
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(",");
-                CAGProfileBulkUploadDTO cagProfileBulkUpload = createCAGProfileBulkUploadDTO(data);
-                validateCAGProfileBulkUploadDTO(cagProfileBulkUpload);
-                cagProfileBulkUploadDtos.add(cagProfileBulkUpload);
+    public int rollbackUpload(Integer uploadId, SearchInputMetaData searchInputMetaData) {
+        Timestamp staleBefore = new Timestamp(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(checkpointLeaseSeconds));
+        if (!cagProfileBulkWriter.claimUpload(uploadId, List.of(UPLOAD_STATUS_COMPLETED, UPLOAD_STATUS_ROLLED_BACK),
+                List.of(UPLOAD_STATUS_IN_PROGRESS, UPLOAD_STATUS_RESUMING, UPLOAD_STATUS_ROLLING_BACK), UPLOAD_STATUS_ROLLING_BACK, staleBefore)) {
+            if (!cagProfileBulkUploadRepository.existsById(uploadId)) {
+                throw new CustomApplicationException(buildErrorResponse(HttpStatus.NOT_FOUND, "Upload not found: " + uploadId, searchInputMetaData));
             }
+            throw new CustomApplicationException(buildErrorResponse(HttpStatus.CONFLICT,
+                    "Upload " + uploadId + " is still being saved, retry once it has been idle for "
+                            + checkpointLeaseSeconds + " seconds", searchInputMetaData));
         }
-        return cagProfileBulkUploadDtos;
+        int deleted = 0;
+        int chunk;
+        do {
+            chunk = cagProfileBulkWriter.deleteUploadChunk(uploadId, rollbackChunkRows);
+            deleted += chunk;
+        } while (chunk > 0);
+        cagProfileBulkWriter.updateUploadStatus(uploadId, UPLOAD_STATUS_ROLLED_BACK);
+        return deleted;
+    }
+
+    private static Set<CAGProfile> identitySetOf(List<CAGProfile> cagProfiles) {
+        Set<CAGProfile> set = Collections.newSetFromMap(new IdentityHashMap<>(cagProfiles.size()));
+        set.addAll(cagProfiles);
+        return set;
+    }
+
+    private ErrorResponse buildErrorResponse(HttpStatus status, String message, SearchInputMetaData searchInputMetaData) {
+        return ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .endpoint("/cagBulkUpload")
+                .errorTitle(status)
+                .errorStatus(status.value())
+                .errorMessage(message)
+                .correlationId(searchInputMetaData.getCorrelationId())
+                .build();
     }
 
     /**
-     * Validates the content of an Excel (.xlsx) file.
+     * Copies a response without the saved profiles, so the upload jobs do not keep them in memory.
      *
-     * @param file Multipart file to be validated
-     * @return A set of CAGProfileBulkUploadDTO
-     * @throws IOException If there's an error reading the file
+     * @param response The bulk upload response
+     * @return The response without profiles
      */
-    private Set<CAGProfileBulkUploadDTO> validateXlsxFile(MultipartFile file) throws IOException {
-        Set<CAGProfileBulkUploadDTO> cagProfileBulkUploadDTOs = new HashSet<>();
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                String[] data = new String[row.getPhysicalNumberOfCells()];
-                for (int j = 0; j < row.getPhysicalNumberOfCells(); j++) {
-                    data[j] = row.getCell(j).toString().trim();
-                }
-                CAGProfileBulkUploadDTO cagProfileBulkUpload = createCAGProfileBulkUploadDTO(data);
-                validateCAGProfileBulkUploadDTO(cagProfileBulkUpload);
-                cagProfileBulkUploadDTOs.add(cagProfileBulkUpload);
-            }
-        }
-        return cagProfileBulkUploadDTOs;
+    CAGProfileBulkUploadResponse summaryOf(CAGProfileBulkUploadResponse response) {
+        CAGProfileBulkUploadResponse summary = new CAGProfileBulkUploadResponse();
+        summary.setSearchOutputMetaData(response.getSearchOutputMetaData());
+        summary.setUploadId(response.getUploadId());
+        summary.setFileName(response.getFileName());
+        summary.setFileType(response.getFileType());
+        summary.setFileSize(response.getFileSize());
+        summary.setFileCreated(response.getFileCreated());
+        summary.setRowsProcessed(response.getRowsProcessed());
+        summary.setRowsFailed(response.getRowsFailed());
+        summary.setRowsDuplicate(response.getRowsDuplicate());
+        summary.setRowsInserted(response.getRowsInserted());
+        summary.setRowsUpdated(response.getRowsUpdated());
+        summary.setRowsUnchanged(response.getRowsUnchanged());
+        summary.setParseTimeMillis(response.getParseTimeMillis());
+        summary.setPersistTimeMillis(response.getPersistTimeMillis());
+        return summary;
     }
 
     /**
-     * Creates a CAGProfileBulkUploadDTO from the data array.
+     * Returns one page of the CAG profiles created by an upload, using keyset pagination on the profile id.
      *
-     * @param data Array of string data from a row in the file
-     * @return A CAGProfileBulkUploadDTO
+     * @param uploadId            Id of the CAGProfileBulkUpload
+     * @param afterProfileId      Id of the last profile of the previous page, or null for the first page
+     * @param pageSize            Number of profiles per page, defaults to 100 and is capped at 1000
+     * @param searchInputMetaData Search input metadata
+     * @return The page of profiles with the cursor of the next page
+     */
+    public CAGProfilePageResponse getCagProfilesByUpload(Integer uploadId, Long afterProfileId, Integer pageSize,
+                                                         SearchInputMetaData searchInputMetaData) {
+        logger.info("Start of getCagProfilesByUpload() : CAGProfileBulkUploadServiceImpl, Upload Id: {}, After: {}", uploadId, afterProfileId);
+        CAGProfileBulkUpload upload = cagProfileBulkUploadRepository.findById(uploadId).orElseThrow(() -> {
+            ErrorResponse errorResponse = ErrorResponse.builder()
+                    .timestamp(LocalDateTime.now())
+                    .endpoint("/cagBulkUpload")
+                    .errorTitle(HttpStatus.NOT_FOUND)
+                    .errorStatus(HttpStatus.NOT_FOUND.value())
+                    .errorMessage("Upload not found: " + uploadId)
+                    .correlationId(searchInputMetaData.getCorrelationId())
+                    .build();
+            return new CustomApplicationException(errorResponse);
+        });
+        int size = pageSize == null || pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+
+        List<CAGProfile> page = cagProfileBulkWriter.findPageByUpload(upload.getFileId(), afterProfileId, size);
+        Long nextAfterProfileId = page.size() < size ? null : page.get(page.size() - 1).getCagProfileId();
+
+        SearchOutputMetaData searchOutputMetaData = SearchOutputMetaData.builder()
+                .respCode(String.valueOf(HttpStatus.OK.value()))
+                .correlationId(searchInputMetaData.getCorrelationId())
+                .respMessage(List.of("CAG Profile Details retrieved successfully"))
+                .build();
+        logger.info("End of getCagProfilesByUpload() : CAGProfileBulkUploadServiceImpl, Rows: {}", page.size());
+        return CAGProfilePageResponse.builder()
+                .searchOutputMetaData(searchOutputMetaData)
+                .uploadId(uploadId)
+                .pageSize(size)
+                .cagProfiles(page)
+                .nextAfterProfileId(nextAfterProfileId)
+                .build();
+    }
+
+    /**
+     * Builds the response for an upload rejected because rows failed validation
+     * while collecting all errors. Nothing is saved for a rejected upload.
+     *
+     * @param originalFilename    Original name of the uploaded file
+     * @param contentType         Content type of the uploaded file
+     * @param fileSize            Size of the uploaded file in bytes
+     * @param rowHandler          Row handler holding the validation results
+     * @param searchInputMetaData Search input metadata
+     * @return The bulk upload response with the validation summary
      */
-    private CAGProfileBulkUploadDTO createCAGProfileBulkUploadDTO(String[] data) {
-        return CAGProfileBulkUploadDTO.builder()
-                .carrierId(data[0])
-                .accountId(data[1])
-                .groupId(data[2])
-                .planType(data[3])
-                .mailOrderPharmacy(data[4])
-                .prospectClient(data[5])
-                .editMember(data[6])
-                .entitlements(data[7])
-                .accessErrorMessage(data[8])
-                .notes(data[9])
+    private CAGProfileBulkUploadResponse buildRejectedResponse(String originalFilename, String contentType, long fileSize,
+                                                               UploadRowHandler rowHandler, SearchInputMetaData searchInputMetaData) {
+        logger.error("Upload {} rejected, {} of {} rows failed validation, error report: {}",
+                originalFilename, rowHandler.rowsFailed, rowHandler.rowsRead, rowHandler.errorReportId);
+        CAGProfileBulkUploadResponse cagProfileDetailsResponse = new CAGProfileBulkUploadResponse();
+        SearchOutputMetaData searchOutputMetaData = SearchOutputMetaData.builder()
+                .respCode(String.valueOf(HttpStatus.BAD_REQUEST.value()))
+                .correlationId(searchInputMetaData.getCorrelationId())
+                .respMessage(List.of(rowHandler.rowsFailed + " of " + rowHandler.rowsRead
+                        + " rows failed validation, no CAG Profile Details were saved"))
                 .build();
+        cagProfileDetailsResponse.setSearchOutputMetaData(searchOutputMetaData);
+        cagProfileDetailsResponse.setFileName(originalFilename);
+        cagProfileDetailsResponse.setFileType(contentType);
+        cagProfileDetailsResponse.setFileSize(String.valueOf(fileSize));
+        cagProfileDetailsResponse.setRowsProcessed(rowHandler.rowsRead);
+        cagProfileDetailsResponse.setRowsFailed(rowHandler.rowsFailed);
+        cagProfileDetailsResponse.setErrorReportId(rowHandler.errorReportId);
+        return cagProfileDetailsResponse;
+    }
+
+    /**
+     * Reads the content of the uploaded file in a single pass. The first record is validated
+     * as the header row, every following row is validated and converted as soon as it is read.
+     *
+     * @param uploadContent       Content of the uploaded file
+     * @param searchInputMetaData Search input metadata
+     * @param timestamp           The current timestamp
+     * @param progress            Progress of the upload
+     * @param recording           Metrics recording of the upload
+     * @param resumeAfterRow      Rows up to this row number were saved before and are skipped, 0 for a new upload
+     * @return The row handler holding the converted CAGProfile entities and the validation results
+     * @throws IOException If there's an error reading the file
+     */
+    private UploadRowHandler processFileContent(UploadContent uploadContent, SearchInputMetaData searchInputMetaData,
+                                               Timestamp timestamp, UploadProgress progress,
+                                               UploadMetrics.Recording recording, int resumeAfterRow) throws IOException {
+        logger.info("Start of processFileContent() : CAGProfileBulkUploadServiceImpl");
+        UploadRowHandler rowHandler = new UploadRowHandler(searchInputMetaData, timestamp, progress, recording, resumeAfterRow);
+
+        try (RowDuplicateDetector duplicateDetector = rowHandler.duplicateDetector) {
+            // The stream is not closed here so the caller can finish copying it
+            SchemaUploadReader.read(uploadContent, rowHandler);
+            rowHandler.awaitValidation();
+            if (rowHandler.rowsDuplicate > 0) {
+                logger.info("Skipped {} duplicate rows, first at rows {}{}", rowHandler.rowsDuplicate, rowHandler.duplicateRowNums,
+                        duplicateDetector.isSpilled() ? ", duplicate detection spilled to disk" : "");
+            }
+        }
+
+        logger.info("End of processFileContent() : CAGProfileBulkUploadServiceImpl");
+        return rowHandler;
     }
 
     /**
-     * Validates a CAGProfileBulkUploadDTO object using the Validator.
+     * Validates a CAGProfileBulkUploadDTO object using the Validator. Called concurrently
+     * from the row validation executor.
      *
      * @param dto CAGProfileBulkUploadDTO to be validated
+     * @return The constraint violations, or null if the DTO is valid
      */
-    private void validateCAGProfileBulkUploadDTO(CAGProfileBulkUploadDTO dto) {
+    private Set<ConstraintViolation<CAGProfileBulkUploadDTO>> validateCAGProfileBulkUploadDTO(CAGProfileBulkUploadDTO dto) {
         Set<ConstraintViolation<CAGProfileBulkUploadDTO>> violations = validator.validate(dto);
-        if (!violations.isEmpty()) {
-            throw new ConstraintViolationException(violations);
-        }
+        return violations.isEmpty() ? null : violations;
     }
 
     /**
@@ -348,4 +942,183 @@ public class CAGProfileBulkUploadServiceImpl implements CAGProfileBulkUploadServ
         }
         return notesSet;
     }
+
+    /**
+     * Binds the upload schema to the header on the first record and converts every following row, skipping rows that
+     * are duplicates of an earlier row. Rows are checked against the compiled row rules first; only
+     * rows failing them are validated by the Validator, in batches on the row validation executor.
+     * Invalid rows either reject the upload right away or, when collecting all errors, are written
+     * to the error report.
+     */
+    private final class UploadRowHandler implements SchemaRowHandler<CAGProfileBulkUploadDTO> {
+
+        private final SearchInputMetaData searchInputMetaData;
+        private final Timestamp timestamp;
+        private final UploadProgress progress;
+        private final UploadMetrics.Recording recording;
+        // Identical rows are only saved once; the detector keeps a hash per row instead of the row itself,
+        // so the profiles can be kept in a plain list in file order
+        private final RowDuplicateDetector duplicateDetector = new RowDuplicateDetector(dedupMemoryBudgetBytes, Paths.get(spoolDir));
+        private final List<CAGProfile> cagProfiles = new ArrayList<>();
+        // File row number of each profile, used for checkpoints
+        private int[] profileRowNums = new int[1024];
+        private final int resumeAfterRow;
+        private final List<Integer> duplicateRowNums = new ArrayList<>();
+        // Rows already counted as failed, a row can fail both validations
+        private final BitSet failedRowNums = new BitSet();
+        private final ColumnDictionary columnDictionary = new ColumnDictionary(UPLOAD_SCHEMA.width(), LOW_CARDINALITY_COLUMNS, MAX_DICTIONARY_ENTRIES);
+        private final ParallelRowValidator<CAGProfileBulkUploadDTO, Set<ConstraintViolation<CAGProfileBulkUploadDTO>>> rowValidator;
+        private UploadSchema.BoundSchema<CAGProfileBulkUploadDTO> schema;
+        private int rowsRead;
+        private int rowsFailed;
+        private int rowsDuplicate;
+        private String errorReportId;
+        private UploadErrorReportWriter errorReport;
+
+        private UploadRowHandler(SearchInputMetaData searchInputMetaData, Timestamp timestamp, UploadProgress progress,
+                                 UploadMetrics.Recording recording, int resumeAfterRow) {
+            this.searchInputMetaData = searchInputMetaData;
+            this.timestamp = timestamp;
+            this.progress = progress;
+            this.recording = recording;
+            this.resumeAfterRow = resumeAfterRow;
+            this.rowValidator = new ParallelRowValidator<>(rowValidationExecutor, validationBatchSize, this::validateRow, this::handleFailure);
+        }
+
+        @Override
+        public UploadSchema.BoundSchema<CAGProfileBulkUploadDTO> handleHeader(String[] headers) {
+            long headerStart = System.nanoTime();
+            try {
+                schema = UPLOAD_SCHEMA.bind(headers);
+            } catch (IllegalArgumentException ex) {
+                logger.error(ex.getMessage());
+                throw ex;
+            }
+            recording.addTime(UploadMetrics.STAGE_HEADER, System.nanoTime() - headerStart);
+            return schema;
+        }
+
+        @Override
+        public void handleRow(int rowNum, String[] data) {
+            if (rowNum <= resumeAfterRow) {
+                // Saved before the upload was interrupted, only remembered for duplicate detection
+                duplicateDetector.add(data, UPLOAD_SCHEMA.width());
+                return;
+            }
+            rowsRead++;
+            // Repeated values share one instance through the DTO and the entity
+            columnDictionary.canonicalize(data);
+            long validateStart = System.nanoTime();
+            boolean valid = ROW_RULES.isValid(data);
+            recording.addTime(UploadMetrics.STAGE_VALIDATE, System.nanoTime() - validateStart);
+            CAGProfileBulkUploadDTO cagProfileBulkUpload = schema.map(data);
+            if (!valid) {
+                rowValidator.add(rowNum, cagProfileBulkUpload);
+            }
+            progress.rowProcessed();
+            if (duplicateDetector.add(data, UPLOAD_SCHEMA.width())) {
+                long convertStart = System.nanoTime();
+                if (cagProfiles.size() == profileRowNums.length) {
+                    profileRowNums = Arrays.copyOf(profileRowNums, profileRowNums.length * 2);
+                }
+                profileRowNums[cagProfiles.size()] = rowNum;
+                cagProfiles.add(convertToEntity(cagProfileBulkUpload, searchInputMetaData, timestamp));
+                recording.addTime(UploadMetrics.STAGE_CONVERT, System.nanoTime() - convertStart);
+            } else if (++rowsDuplicate <= MAX_REPORTED_DUPLICATES) {
+                duplicateRowNums.add(rowNum);
+            }
+        }
+
+        /**
+         * Waits for the remaining validation batches, checks the rows against the reference data
+         * and closes the error report.
+         *
+         * @throws IOException If the error report could not be written
+         */
+        private void awaitValidation() throws IOException {
+            try {
+                rowValidator.await();
+                validateReferenceData();
+            } finally {
+                if (errorReport != null) {
+                    errorReport.close();
+                }
+            }
+        }
+
+        /**
+         * Checks the carrier, account and group combination of every converted row against the reference data,
+         * all rows at once so the lookups can be batched. Unknown combinations fail their rows like constraint
+         * violations do.
+         */
+        private void validateReferenceData() {
+            if (!referenceDataValidator.isEnabled() || cagProfiles.isEmpty()) {
+                return;
+            }
+            long validateStart = System.nanoTime();
+            List<String[]> combinations = new ArrayList<>(cagProfiles.size());
+            for (CAGProfile cagProfile : cagProfiles) {
+                combinations.add(new String[]{cagProfile.getCarrierId(), cagProfile.getAccountId(), cagProfile.getGroupId()});
+            }
+            BitSet unknown = referenceDataValidator.findUnknown(combinations);
+            recording.addTime(UploadMetrics.STAGE_VALIDATE, System.nanoTime() - validateStart);
+            for (int index = unknown.nextSetBit(0); index >= 0; index = unknown.nextSetBit(index + 1)) {
+                int rowNum = profileRowNums[index];
+                String message = "Unknown carrier, account and group combination";
+                if (!collectAllErrors) {
+                    logger.error("Reference data validation failed for row {}", rowNum);
+                    throw new IllegalArgumentException("Row " + rowNum + ": " + message);
+                }
+                openErrorReport();
+                errorReport.write(rowNum, "carrierId", message);
+                if (!failedRowNums.get(rowNum)) {
+                    failedRowNums.set(rowNum);
+                    progress.rowFailed();
+                    rowsFailed++;
+                }
+            }
+        }
+
+        private void openErrorReport() {
+            if (errorReport == null) {
+                errorReportId = UUID.randomUUID().toString();
+                try {
+                    errorReport = uploadErrorReportService.openErrorReport(errorReportId);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Unable to create error report", ex);
+                }
+            }
+        }
+
+        /**
+         * Handles an invalid row, called in row order. Without collecting all errors the upload is
+         * rejected with the violations of the first invalid row.
+         *
+         * @param failure The invalid row and its violations
+         */
+        private void handleFailure(RowFailure<Set<ConstraintViolation<CAGProfileBulkUploadDTO>>> failure) {
+            if (!collectAllErrors) {
+                logger.error("Validation failed for row {}", failure.getRowNum());
+                throw new ConstraintViolationException("Row " + failure.getRowNum() + ": "
+                        + failure.getResult().stream().map(ConstraintViolation::getMessage).collect(Collectors.joining(", ")),
+                        failure.getResult());
+            }
+            openErrorReport();
+            for (ConstraintViolation<CAGProfileBulkUploadDTO> violation : failure.getResult()) {
+                errorReport.write(failure.getRowNum(), violation.getPropertyPath().toString(), violation.getMessage());
+            }
+            failedRowNums.set(failure.getRowNum());
+            rowsFailed++;
+        }
+
+        private Set<ConstraintViolation<CAGProfileBulkUploadDTO>> validateRow(CAGProfileBulkUploadDTO cagProfileBulkUpload) {
+            long validateStart = System.nanoTime();
+            Set<ConstraintViolation<CAGProfileBulkUploadDTO>> violations = validateCAGProfileBulkUploadDTO(cagProfileBulkUpload);
+            recording.addTime(UploadMetrics.STAGE_VALIDATE, System.nanoTime() - validateStart);
+            if (violations != null) {
+                progress.rowFailed();
+            }
+            return violations;
+        }
+    }
 }
@@ -0,0 +1,29 @@
+package com.businessadmin.config;
+
+import com.businessadmin.util.UploadAdmissionController;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Admission control for bulk uploads. Budgets left at 0 are derived from the maximum heap:
+ * half of it for regular uploads and a tenth for the small file fast lane.
+ */
+@Configuration
+public class UploadAdmissionConfig {
+
+    @Bean
+    public UploadAdmissionController uploadAdmissionController(
+            @Value("${cag.bulk-upload.admission.heap-budget-bytes:0}") long heapBudgetBytes,
+            @Value("${cag.bulk-upload.admission.fast-lane-budget-bytes:0}") long fastLaneBudgetBytes,
+            @Value("${cag.bulk-upload.admission.fast-lane-max-file-bytes:1048576}") long fastLaneMaxFileBytes,
+            @Value("${cag.bulk-upload.admission.max-queued:50}") int maxQueued,
+            @Value("${cag.bulk-upload.admission.max-uploads-per-user:2}") int maxUploadsPerUser,
+            @Value("${cag.bulk-upload.admission.max-wait-ms:30000}") long maxWaitMillis) {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        return new UploadAdmissionController(
+                heapBudgetBytes > 0 ? heapBudgetBytes : maxHeap / 2,
+                fastLaneBudgetBytes > 0 ? fastLaneBudgetBytes : maxHeap / 10,
+                fastLaneMaxFileBytes, maxQueued, maxUploadsPerUser, maxWaitMillis);
+    }
+}
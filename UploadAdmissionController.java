@@ -0,0 +1,187 @@
+package com.businessadmin.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admits uploads against a heap budget so concurrent uploads can't exhaust the heap together.
+ * The memory an upload needs is estimated from its size and format and reserved before it is read;
+ * uploads that don't fit wait in a bounded queue. Small files go through a separate fast lane with a
+ * budget of its own, so they never wait behind large ones, and every user may only run a few uploads at once.
+ */
+public class UploadAdmissionController {
+
+    // Rough heap needed per byte of upload, from the parsed rows and entities kept until the upload is saved
+    private static final int CSV_COST_FACTOR = 4;
+    private static final int XLSX_COST_FACTOR = 12;
+    private static final int COMPRESSED_COST_FACTOR = 40;
+
+    private static final long PERMIT_BYTES = 1024;
+
+    private final Logger logger = LogManager.getLogger(this.getClass());
+
+    private final Lane standardLane;
+    private final Lane fastLane;
+    private final long fastLaneMaxFileBytes;
+    private final int maxUploadsPerUser;
+    private final long maxWaitMillis;
+    private final Map<String, AtomicInteger> uploadsPerUser = new ConcurrentHashMap<>();
+
+    /**
+     * @param heapBudgetBytes      Heap shared by uploads larger than the fast lane limit
+     * @param fastLaneBudgetBytes  Heap reserved for small uploads
+     * @param fastLaneMaxFileBytes Largest file admitted through the fast lane
+     * @param maxQueuedPerLane     Uploads that may wait for admission per lane before new ones are rejected
+     * @param maxUploadsPerUser    Uploads a single user may run at the same time
+     * @param maxWaitMillis        Longest time an upload waits for admission
+     */
+    public UploadAdmissionController(long heapBudgetBytes, long fastLaneBudgetBytes, long fastLaneMaxFileBytes,
+                                     int maxQueuedPerLane, int maxUploadsPerUser, long maxWaitMillis) {
+        this.standardLane = new Lane("standard", heapBudgetBytes, maxQueuedPerLane);
+        this.fastLane = new Lane("fast", fastLaneBudgetBytes, maxQueuedPerLane);
+        this.fastLaneMaxFileBytes = fastLaneMaxFileBytes;
+        this.maxUploadsPerUser = maxUploadsPerUser;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Estimates the heap an upload needs while it is processed.
+     *
+     * @param kind      Format and compression of the upload, detected from its content
+     * @param sizeBytes Size of the uploaded file in bytes
+     * @return The estimated heap in bytes
+     */
+    public static long estimateMemoryCost(UploadContent.Kind kind, long sizeBytes) {
+        int factor;
+        if (kind.getCompression() != null) {
+            factor = COMPRESSED_COST_FACTOR;
+        } else if (kind.getFormat() == UploadContent.Format.XLSX) {
+            factor = XLSX_COST_FACTOR;
+        } else {
+            factor = CSV_COST_FACTOR;
+        }
+        return Math.max(sizeBytes, 0) * factor;
+    }
+
+    /**
+     * Waits until the upload fits in the budget of its lane and reserves its estimated memory.
+     *
+     * @param userId    Id of the uploading user, or null if the caller has no user
+     * @param fileName  Name of the uploaded file, only logged
+     * @param kind      Format and compression of the upload, see {@link UploadContent#detect}
+     * @param sizeBytes Size of the uploaded file in bytes, or -1 if unknown, then it runs alone in the standard lane
+     * @return The permit, to be closed once the upload is done
+     * @throws UploadRejectedException If the user has too many uploads running, the queue is full or the wait timed out
+     */
+    public Permit admit(String userId, String fileName, UploadContent.Kind kind, long sizeBytes) {
+        if (userId != null) {
+            int running = uploadsPerUser.computeIfAbsent(userId, key -> new AtomicInteger()).incrementAndGet();
+            if (running > maxUploadsPerUser) {
+                releaseUser(userId);
+                throw new UploadRejectedException(UploadRejectedException.TOO_MANY_REQUESTS,
+                        "User " + userId + " already has " + maxUploadsPerUser + " uploads in progress");
+            }
+        }
+        // A file of unknown size could be any size, it reserves the whole budget of the standard lane
+        Lane lane = sizeBytes >= 0 && sizeBytes <= fastLaneMaxFileBytes ? fastLane : standardLane;
+        long cost = sizeBytes < 0 ? Long.MAX_VALUE : estimateMemoryCost(kind, sizeBytes);
+        int permits;
+        try {
+            permits = lane.acquire(cost, maxWaitMillis);
+        } catch (RuntimeException ex) {
+            if (userId != null) {
+                releaseUser(userId);
+            }
+            throw ex;
+        }
+        logger.info("Admitted {} upload {} of {} bytes in the {} lane, reserved {} KB", kind, fileName, sizeBytes, lane.name, permits);
+        return new Permit(lane, permits, userId);
+    }
+
+    private void releaseUser(String userId) {
+        uploadsPerUser.computeIfPresent(userId, (key, running) -> running.decrementAndGet() <= 0 ? null : running);
+    }
+
+    /**
+     * Memory reserved for an admitted upload.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Lane lane;
+        private final int permits;
+        private final String userId;
+        private boolean released;
+
+        private Permit(Lane lane, int permits, String userId) {
+            this.lane = lane;
+            this.permits = permits;
+            this.userId = userId;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            lane.semaphore.release(permits);
+            if (userId != null) {
+                releaseUser(userId);
+            }
+        }
+    }
+
+    /**
+     * Budget of one lane, one semaphore permit per KB. The semaphore is fair, so a large upload
+     * waiting for its memory is not overtaken forever by smaller ones of the same lane.
+     */
+    private static final class Lane {
+
+        private final String name;
+        private final int totalPermits;
+        private final int maxQueued;
+        private final Semaphore semaphore;
+        private final AtomicInteger queued = new AtomicInteger();
+
+        private Lane(String name, long budgetBytes, int maxQueued) {
+            this.name = name;
+            this.totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budgetBytes / PERMIT_BYTES));
+            this.maxQueued = maxQueued;
+            this.semaphore = new Semaphore(totalPermits, true);
+        }
+
+        private int acquire(long costBytes, long maxWaitMillis) {
+            // An upload larger than the whole budget runs alone
+            int permits = (int) Math.max(1, Math.min(totalPermits, (costBytes - 1) / PERMIT_BYTES + 1));
+            try {
+                // Unlike the untimed tryAcquire, the timed one keeps the fair ordering and never overtakes waiting uploads
+                if (semaphore.tryAcquire(permits, 0, TimeUnit.MILLISECONDS)) {
+                    return permits;
+                }
+                if (queued.incrementAndGet() > maxQueued) {
+                    queued.decrementAndGet();
+                    throw new UploadRejectedException(UploadRejectedException.SERVICE_UNAVAILABLE,
+                            "Too many uploads waiting in the " + name + " lane, please retry later");
+                }
+                try {
+                    if (!semaphore.tryAcquire(permits, maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                        throw new UploadRejectedException(UploadRejectedException.SERVICE_UNAVAILABLE,
+                                "Timed out waiting for memory in the " + name + " lane, please retry later");
+                    }
+                    return permits;
+                } finally {
+                    queued.decrementAndGet();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new UploadRejectedException(UploadRejectedException.SERVICE_UNAVAILABLE, "Interrupted while waiting for admission");
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.businessadmin.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Content of an uploaded file with its format detected from the leading magic bytes instead of the file name.
+ * Gzip files and zip archives holding a single file are decompressed on the fly and read as CSV;
+ * zip archives holding Office Open XML parts are read as XLSX.
+ * The decompressed content is capped, so a small compressed file can't expand without bound.
+ * Closing the content releases the decompressor but leaves the underlying stream open.
+ */
+public final class UploadContent implements Closeable {
+
+    public enum Format {
+        CSV, XLSX
+    }
+
+    /**
+     * Format and compression of an upload, as detected from its leading bytes.
+     */
+    public enum Kind {
+        CSV(Format.CSV, null),
+        GZIP_CSV(Format.CSV, "gzip"),
+        ZIP_CSV(Format.CSV, "zip"),
+        XLSX(Format.XLSX, null);
+
+        private final Format format;
+        private final String compression;
+
+        Kind(Format format, String compression) {
+            this.format = format;
+            this.compression = compression;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        /**
+         * @return "gzip" or "zip" for compressed uploads, null otherwise
+         */
+        public String getCompression() {
+            return compression;
+        }
+    }
+
+    private static final int ZIP_LOCAL_HEADER_LENGTH = 30;
+    private static final int PEEK_LIMIT = 1024;
+
+    private final Kind kind;
+    private final InputStream inputStream;
+
+    private UploadContent(Kind kind, InputStream inputStream) {
+        this.kind = kind;
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Detects the format of an upload without consuming it, e.g. to estimate its cost before it is read.
+     *
+     * @param inputStream Stream of the uploaded file, positioned at its first byte; must support mark and reset
+     * @return The kind of the upload
+     * @throws IOException If there's an error reading the stream
+     */
+    public static Kind detect(InputStream inputStream) throws IOException {
+        if (!inputStream.markSupported()) {
+            throw new IllegalArgumentException("Stream must support mark and reset, wrap it in a BufferedInputStream");
+        }
+        inputStream.mark(PEEK_LIMIT);
+        byte[] header = inputStream.readNBytes(ZIP_LOCAL_HEADER_LENGTH);
+        inputStream.reset();
+
+        if (header.length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B) {
+            return Kind.GZIP_CSV;
+        }
+        if (header.length == ZIP_LOCAL_HEADER_LENGTH && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4) {
+            return isOfficeOpenXml(inputStream, header) ? Kind.XLSX : Kind.ZIP_CSV;
+        }
+        return Kind.CSV;
+    }
+
+    /**
+     * Detects the format of an upload and wraps the stream with the matching decompressor, without a limit
+     * on the decompressed size.
+     *
+     * @param inputStream Stream of the uploaded file, positioned at its first byte
+     * @return The upload content
+     * @throws IOException If there's an error reading the stream
+     */
+    public static UploadContent open(InputStream inputStream) throws IOException {
+        return open(inputStream, Long.MAX_VALUE);
+    }
+
+    /**
+     * Detects the format of an upload and wraps the stream with the matching decompressor.
+     *
+     * @param inputStream          Stream of the uploaded file, positioned at its first byte
+     * @param maxUncompressedBytes Largest decompressed size of a compressed upload; reading past it
+     *                             throws an IllegalArgumentException
+     * @return The upload content
+     * @throws IOException If there's an error reading the stream
+     */
+    public static UploadContent open(InputStream inputStream, long maxUncompressedBytes) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new CloseShieldInputStream(inputStream));
+        Kind kind = detect(in);
+        switch (kind) {
+            case GZIP_CSV:
+                return new UploadContent(kind, new SizeLimitInputStream(new GZIPInputStream(in), maxUncompressedBytes));
+            case ZIP_CSV:
+                return new UploadContent(kind, new SizeLimitInputStream(new SingleEntryZipInputStream(in), maxUncompressedBytes));
+            default:
+                return new UploadContent(kind, in);
+        }
+    }
+
+    /**
+     * Checks the name of the first zip entry for a part that only Office Open XML packages contain.
+     */
+    private static boolean isOfficeOpenXml(InputStream in, byte[] header) throws IOException {
+        int nameLength = (header[26] & 0xFF) | (header[27] & 0xFF) << 8;
+        in.mark(PEEK_LIMIT);
+        byte[] localHeader = in.readNBytes(ZIP_LOCAL_HEADER_LENGTH + Math.min(nameLength, PEEK_LIMIT - ZIP_LOCAL_HEADER_LENGTH));
+        in.reset();
+        String firstEntry = new String(localHeader, ZIP_LOCAL_HEADER_LENGTH, localHeader.length - ZIP_LOCAL_HEADER_LENGTH, StandardCharsets.UTF_8);
+        return firstEntry.equals("[Content_Types].xml") || firstEntry.startsWith("_rels/")
+                || firstEntry.startsWith("docProps/") || firstEntry.startsWith("xl/");
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Format getFormat() {
+        return kind.getFormat();
+    }
+
+    /**
+     * @return "gzip" or "zip" for compressed uploads, null otherwise
+     */
+    public String getCompression() {
+        return kind.getCompression();
+    }
+
+    /**
+     * @return The decompressed content of the upload
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Reads the only file of a zip archive and rejects archives holding more than one file.
+     */
+    private static final class SingleEntryZipInputStream extends FilterInputStream {
+
+        private SingleEntryZipInputStream(InputStream in) throws IOException {
+            super(new ZipInputStream(in));
+            if (nextFileEntry() == null) {
+                throw new IllegalArgumentException("Zip file is empty");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                checkNoMoreEntries();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                checkNoMoreEntries();
+            }
+            return n;
+        }
+
+        private void checkNoMoreEntries() throws IOException {
+            if (nextFileEntry() != null) {
+                throw new IllegalArgumentException("Zip file must contain a single file");
+            }
+        }
+
+        private ZipEntry nextFileEntry() throws IOException {
+            ZipEntry entry = ((ZipInputStream) in).getNextEntry();
+            while (entry != null && entry.isDirectory()) {
+                entry = ((ZipInputStream) in).getNextEntry();
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Fails once more than the given number of bytes have been read.
+     */
+    private static final class SizeLimitInputStream extends FilterInputStream {
+
+        private final long maxBytes;
+        private long bytesRead;
+
+        private SizeLimitInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) {
+            bytesRead += n;
+            if (bytesRead > maxBytes) {
+                throw new IllegalArgumentException("Decompressed file is larger than " + maxBytes + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Keeps the underlying stream open when the decompressor is closed, the caller owns it.
+     */
+    private static final class CloseShieldInputStream extends FilterInputStream {
+
+        private CloseShieldInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream is closed by the caller
+        }
+    }
+}
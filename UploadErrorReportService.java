@@ -0,0 +1,142 @@
+package com.businessadmin.service.impl;
+
+import com.businessadmin.exception.CustomApplicationException;
+import com.businessadmin.request.common.model.SearchInputMetaData;
+import com.businessadmin.response.common.model.ErrorResponse;
+import com.businessadmin.util.UploadErrorReportWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the error report CSV files written for uploads that fail validation and serves them for download.
+ * A report is deleted once it hasn't been written to for cag.bulk-upload.error-report-retention-minutes.
+ */
+@Service
+public class UploadErrorReportService {
+
+    private static final String REPORT_FILE_PREFIX = "cag-upload-errors-";
+    private static final String REPORT_FILE_SUFFIX = ".csv";
+
+    private final Logger logger = LogManager.getLogger(this.getClass());
+
+    @Value("${cag.bulk-upload.error-report-dir:${java.io.tmpdir}}")
+    private String errorReportDir;
+
+    @Value("${cag.bulk-upload.error-report-retention-minutes:1440}")
+    private long retentionMinutes;
+
+    private ScheduledExecutorService purgeExecutor;
+
+    @PostConstruct
+    public void start() {
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-error-report-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long purgeMinutes = Math.max(1, retentionMinutes / 4);
+        purgeExecutor.scheduleWithFixedDelay(this::purgeExpiredReports, purgeMinutes, purgeMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a new error report.
+     *
+     * @param reportId Id of the report, created with {@link UUID#randomUUID()}
+     * @return The writer for the report
+     * @throws IOException If the report file could not be created
+     */
+    public UploadErrorReportWriter openErrorReport(String reportId) throws IOException {
+        logger.info("Creating upload error report {}", reportId);
+        return new UploadErrorReportWriter(reportFile(reportId));
+    }
+
+    /**
+     * Returns an error report for download.
+     *
+     * @param reportId            Id of the report
+     * @param searchInputMetaData Search input metadata
+     * @return The error report CSV
+     */
+    public Resource getErrorReport(String reportId, SearchInputMetaData searchInputMetaData) {
+        Path reportFile = isReportId(reportId) ? reportFile(reportId) : null;
+        if (reportFile == null || !Files.exists(reportFile)) {
+            ErrorResponse errorResponse = ErrorResponse.builder()
+                    .timestamp(LocalDateTime.now())
+                    .endpoint("/cagBulkUpload")
+                    .errorTitle(HttpStatus.NOT_FOUND)
+                    .errorStatus(HttpStatus.NOT_FOUND.value())
+                    .errorMessage("No error report found for id " + reportId)
+                    .correlationId(searchInputMetaData.getCorrelationId())
+                    .build();
+            throw new CustomApplicationException(errorResponse);
+        }
+        return new FileSystemResource(reportFile);
+    }
+
+    private Path reportFile(String reportId) {
+        return Paths.get(errorReportDir, REPORT_FILE_PREFIX + reportId + REPORT_FILE_SUFFIX);
+    }
+
+    /**
+     * Deletes the reports whose retention period has passed. The report directory may be shared, e.g. the
+     * temporary directory, so only files named like a report are considered.
+     */
+    private void purgeExpiredReports() {
+        long cutoffMillis = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(retentionMinutes);
+        int purged = 0;
+        try (DirectoryStream<Path> reportFiles = Files.newDirectoryStream(Paths.get(errorReportDir),
+                REPORT_FILE_PREFIX + "*" + REPORT_FILE_SUFFIX)) {
+            for (Path reportFile : reportFiles) {
+                try {
+                    if (Files.getLastModifiedTime(reportFile).toMillis() < cutoffMillis && Files.deleteIfExists(reportFile)) {
+                        purged++;
+                    }
+                } catch (IOException ex) {
+                    // Tried again with the next purge
+                    logger.warn("Unable to delete upload error report {}", reportFile, ex);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // An exception would cancel the scheduled purge, the next one tries again
+            logger.error("Unable to purge upload error reports in {}", errorReportDir, ex);
+        }
+        logger.debug("Purged {} upload error reports", purged);
+    }
+
+    /**
+     * Only ids in UUID format are accepted so a report id can't point outside the report directory.
+     */
+    private boolean isReportId(String reportId) {
+        try {
+            UUID.fromString(reportId);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.businessadmin.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the validation errors of an upload to a CSV file as they are found,
+ * one line per error with the row number, column and message.
+ */
+public class UploadErrorReportWriter implements Closeable {
+
+    private static final String HEADER = "rowNumber,column,message";
+
+    private final BufferedWriter writer;
+
+    public UploadErrorReportWriter(Path reportFile) throws IOException {
+        this.writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8);
+        writer.write(HEADER);
+        writer.newLine();
+    }
+
+    /**
+     * Appends an error to the report.
+     *
+     * @param rowNum  Row number of the invalid row
+     * @param column  Column the error refers to
+     * @param message Error message
+     */
+    public void write(int rowNum, String column, String message) {
+        try {
+            writer.write(String.valueOf(rowNum));
+            writer.write(',');
+            writer.write(ExportRowWriter.escapeCsv(column));
+            writer.write(',');
+            writer.write(ExportRowWriter.escapeCsv(message));
+            writer.newLine();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to write error report", ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,27 @@
+package com.businessadmin.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Bounded executor for asynchronous bulk upload jobs. Uploads beyond the pool size wait in the
+ * queue; once the queue is full new submissions are rejected instead of piling up.
+ */
+@Configuration
+public class UploadExecutorConfig {
+
+    @Bean(name = "uploadJobExecutor")
+    public ThreadPoolTaskExecutor uploadJobExecutor(@Value("${cag.bulk-upload.jobs.pool-size:2}") int poolSize,
+                                                    @Value("${cag.bulk-upload.jobs.queue-capacity:20}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("cag-upload-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,83 @@
+package com.businessadmin.util;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 and size of an uploaded file, used to recognise a file that was already uploaded.
+ */
+@Getter
+@EqualsAndHashCode
+public final class UploadFingerprint {
+
+    private final String sha256;
+    private final long size;
+
+    private UploadFingerprint(String sha256, long size) {
+        this.sha256 = sha256;
+        this.size = size;
+    }
+
+    /**
+     * Creates a fingerprint from a digest computed elsewhere, e.g. while the file was written to the blob store.
+     *
+     * @param sha256 Hex encoded SHA-256 of the file
+     * @param size   Size of the file in bytes
+     * @return The fingerprint
+     */
+    public static UploadFingerprint of(String sha256, long size) {
+        return new UploadFingerprint(sha256, size);
+    }
+
+    /**
+     * Fingerprints a stream by reading it to the end.
+     *
+     * @param inputStream Stream of the uploaded file
+     * @return The fingerprint
+     * @throws IOException If there's an error reading the stream
+     */
+    public static UploadFingerprint of(InputStream inputStream) throws IOException {
+        return copy(inputStream, OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Copies a stream to a file, fingerprinting it on the way.
+     *
+     * @param inputStream Stream of the uploaded file
+     * @param target      File the stream is copied to
+     * @return The fingerprint
+     * @throws IOException If there's an error reading the stream or writing the file
+     */
+    public static UploadFingerprint copyTo(InputStream inputStream, Path target) throws IOException {
+        try (OutputStream out = Files.newOutputStream(target)) {
+            return copy(inputStream, out);
+        }
+    }
+
+    private static UploadFingerprint copy(InputStream inputStream, OutputStream out) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+        byte[] buffer = new byte[8192];
+        long size = 0;
+        int n;
+        while ((n = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, n);
+            out.write(buffer, 0, n);
+            size += n;
+        }
+        return new UploadFingerprint(HexFormat.of().formatHex(digest.digest()), size);
+    }
+}
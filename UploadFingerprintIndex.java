@@ -0,0 +1,66 @@
+package com.businessadmin.service.impl;
+
+import com.businessadmin.entity.CAGProfileBulkUpload;
+import com.businessadmin.repository.CAGProfileBulkWriter;
+import com.businessadmin.util.UploadFingerprint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the files each user has already uploaded, by looking up the fingerprint (SHA-256 and size) recorded
+ * on CAGProfileBulkUpload. Lets a resubmitted file return the earlier upload without being parsed again.
+ * The lookup goes to the database, so it holds across pods and restarts, and an upload in progress is
+ * found as soon as its row is saved, once its file has been parsed. An upload in progress whose heartbeat
+ * is older than cag.bulk-upload.checkpoint.lease-seconds was abandoned: it is only found when it can be
+ * resumed, see {@link #isAlive}.
+ */
+@Component
+public class UploadFingerprintIndex {
+
+    private static final List<String> MATCHING_STATUSES = List.of("COMPLETED");
+
+    private static final List<String> LEASED_STATUSES = List.of("IN_PROGRESS", "RESUMING");
+
+    @Autowired
+    private CAGProfileBulkWriter cagProfileBulkWriter;
+
+    @Value("${cag.bulk-upload.idempotency.retention-minutes:1440}")
+    private long retentionMinutes;
+
+    @Value("${cag.bulk-upload.checkpoint.lease-seconds:600}")
+    private long leaseSeconds;
+
+    /**
+     * Looks up an earlier upload of the same file by the same user: completed, still being saved, or
+     * interrupted and resumable.
+     *
+     * @param userId      Id of the uploading user
+     * @param fingerprint Fingerprint of the uploaded file
+     * @param now         Current time, in the time zone uploads are created in
+     * @return The earlier upload, or null if the file was not uploaded within the retention period
+     */
+    public CAGProfileBulkUpload find(String userId, UploadFingerprint fingerprint, LocalDateTime now) {
+        return cagProfileBulkWriter.findUploadByFingerprint(userId, fingerprint.getSha256(), fingerprint.getSize(),
+                Timestamp.valueOf(now.minusMinutes(retentionMinutes)), MATCHING_STATUSES, LEASED_STATUSES, liveAfter());
+    }
+
+    /**
+     * @param upload An upload returned by {@link #find}
+     * @return true if the upload is still being saved, false if it is completed or was interrupted
+     */
+    public boolean isAlive(CAGProfileBulkUpload upload) {
+        return LEASED_STATUSES.contains(upload.getUploadStatus())
+                && upload.getHeartbeatAt() != null && upload.getHeartbeatAt().after(liveAfter());
+    }
+
+    // Heartbeats are written with the clock of the JVM, not in the time zone of the upload timestamps
+    private Timestamp liveAfter() {
+        return new Timestamp(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(leaseSeconds));
+    }
+}
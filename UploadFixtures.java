@@ -0,0 +1,124 @@
+package com.businessadmin.benchmark;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Generates CAG profile upload files for the benchmarks. Files are written once per row count, format and
+ * notes flag into the fixture directory (system property cag.benchmark.fixture-dir, the temp dir by default)
+ * and reused by later runs.
+ */
+public final class UploadFixtures {
+
+    public static final String[] HEADERS = {
+            "carrierId", "accountId", "groupId", "planType", "mailOrderPharmacy",
+            "prospectClient", "editMember", "entitlements", "accessErrorMessage", "notes"
+    };
+
+    private static final String[] PLAN_TYPES = {"COMMERCIAL", "MEDICARE", "MEDICAID", "EXCHANGE"};
+    private static final String[] FLAGS = {"Y", "N"};
+    private static final String[] ENTITLEMENTS = {"FULL", "READ_ONLY", "NONE"};
+
+    private UploadFixtures() {
+    }
+
+    /**
+     * Returns the fixture file, generating it if it does not exist yet.
+     *
+     * @param rows   Number of data rows
+     * @param format "csv" or "xlsx"
+     * @param notes  Whether the notes column is filled
+     * @return Path of the fixture file
+     * @throws IOException If the file could not be written
+     */
+    public static Path fixture(int rows, String format, boolean notes) throws IOException {
+        Path dir = Paths.get(System.getProperty("cag.benchmark.fixture-dir", System.getProperty("java.io.tmpdir")));
+        Path file = dir.resolve("cag-profiles-" + rows + (notes ? "-notes." : ".") + format);
+        if (Files.exists(file)) {
+            return file;
+        }
+        Path tempFile = Files.createTempFile(dir, "cag-profiles-", ".tmp");
+        if ("xlsx".equals(format)) {
+            writeXlsx(tempFile, rows, notes);
+        } else {
+            writeCsv(tempFile, rows, notes);
+        }
+        return Files.move(tempFile, file);
+    }
+
+    /**
+     * Values of a generated data row. Carrier, account and group ids are unique per row, the other
+     * columns cycle through a few values like real uploads do.
+     *
+     * @param index Zero based data row index
+     * @param notes Whether the notes column is filled
+     * @return The row values
+     */
+    public static String[] row(int index, boolean notes) {
+        return new String[]{
+                "CARRIER" + (index % 500),
+                "ACCOUNT" + (index / 500 % 1000),
+                "GROUP" + index,
+                PLAN_TYPES[index % PLAN_TYPES.length],
+                FLAGS[index % 2],
+                FLAGS[index / 2 % 2],
+                FLAGS[index / 3 % 2],
+                ENTITLEMENTS[index % ENTITLEMENTS.length],
+                index % 10 == 0 ? "Access restricted for group " + index : "",
+                notes ? "Loaded by benchmark, row " + index + ", see ticket " + (index % 97) : ""
+        };
+    }
+
+    private static void writeCsv(Path file, int rows, boolean notes) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(String.join(",", HEADERS));
+            writer.newLine();
+            for (int i = 0; i < rows; i++) {
+                String[] values = row(i, notes);
+                for (int column = 0; column < values.length; column++) {
+                    if (column > 0) {
+                        writer.write(',');
+                    }
+                    String value = values[column];
+                    if (value.indexOf(',') >= 0) {
+                        writer.write('"' + value.replace("\"", "\"\"") + '"');
+                    } else {
+                        writer.write(value);
+                    }
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    private static void writeXlsx(Path file, int rows, boolean notes) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            Sheet sheet = workbook.createSheet("CAG Profiles");
+            Row header = sheet.createRow(0);
+            for (int column = 0; column < HEADERS.length; column++) {
+                header.createCell(column).setCellValue(HEADERS[column]);
+            }
+            for (int i = 0; i < rows; i++) {
+                Row row = sheet.createRow(i + 1);
+                String[] values = row(i, notes);
+                for (int column = 0; column < values.length; column++) {
+                    row.createCell(column).setCellValue(values[column]);
+                }
+            }
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+}
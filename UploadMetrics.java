@@ -0,0 +1,166 @@
+package com.businessadmin.service.impl;
+
+import com.businessadmin.util.UploadProgress;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Micrometer metrics of the CAG profile bulk upload pipeline, exposed through Actuator.
+ * <ul>
+ *     <li>cag.upload.stage - time per upload spent in each stage, tagged by stage and file type</li>
+ *     <li>cag.upload.duration - time per upload, tagged by file type and outcome</li>
+ *     <li>cag.upload.rows, cag.upload.rows.rejected, cag.upload.bytes - totals tagged by file type</li>
+ *     <li>cag.upload.rows.throughput, cag.upload.bytes.throughput - rows and bytes per second of each upload</li>
+ *     <li>cag.upload.in_flight - uploads currently being processed</li>
+ * </ul>
+ * The parse stage is the wall time of reading the file. Validate and convert are the summed per row
+ * times, which overlap with parse because rows are validated and converted as they are read.
+ */
+@Component
+public class UploadMetrics {
+
+    public static final String STAGE_HEADER = "header";
+    public static final String STAGE_PARSE = "parse";
+    public static final String STAGE_VALIDATE = "validate";
+    public static final String STAGE_CONVERT = "convert";
+    public static final String STAGE_PERSIST = "persist";
+    public static final String STAGE_BLOB_WRITE = "blob_write";
+
+    private static final String UNKNOWN_FILE_TYPE = "unknown";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("cag.upload.in_flight", inFlight, AtomicInteger::get)
+                .description("CAG profile uploads being processed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts recording an upload.
+     *
+     * @return The recording, to be finished once the upload is done
+     */
+    public Recording start() {
+        inFlight.incrementAndGet();
+        return new Recording();
+    }
+
+    /**
+     * Stage times and totals of a single upload. Stage times may be added from several threads.
+     */
+    public final class Recording {
+
+        private final long startNanos = System.nanoTime();
+        private final Map<String, LongAdder> stageNanos = new ConcurrentHashMap<>();
+        private volatile String fileType = UNKNOWN_FILE_TYPE;
+
+        private Recording() {
+        }
+
+        /**
+         * @param fileType Detected type of the file, e.g. csv, xlsx or csv.gz
+         */
+        public void setFileType(String fileType) {
+            this.fileType = fileType;
+        }
+
+        /**
+         * Adds time spent in a stage.
+         *
+         * @param stage One of the STAGE_ constants
+         * @param nanos Time spent in nanoseconds
+         */
+        public void addTime(String stage, long nanos) {
+            stageNanos.computeIfAbsent(stage, key -> new LongAdder()).add(nanos);
+        }
+
+        /**
+         * Wraps a stream so the time spent writing to it is added to a stage.
+         *
+         * @param out   The stream
+         * @param stage One of the STAGE_ constants
+         * @return The timed stream
+         */
+        public OutputStream timeWrites(OutputStream out, String stage) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    long start = System.nanoTime();
+                    out.write(b);
+                    addTime(stage, System.nanoTime() - start);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    long start = System.nanoTime();
+                    out.write(b, off, len);
+                    addTime(stage, System.nanoTime() - start);
+                }
+            };
+        }
+
+        /**
+         * Records the stage times and totals of the upload.
+         *
+         * @param outcome  Response code of the upload, or "failed"
+         * @param progress Progress of the upload, holding the rows and bytes read
+         */
+        public void finish(String outcome, UploadProgress progress) {
+            inFlight.decrementAndGet();
+            long elapsedNanos = System.nanoTime() - startNanos;
+            stageNanos.forEach((stage, nanos) -> Timer.builder("cag.upload.stage")
+                    .description("Time per CAG profile upload spent in a pipeline stage")
+                    .tag("stage", stage)
+                    .tag("fileType", fileType)
+                    .register(meterRegistry)
+                    .record(nanos.sum(), TimeUnit.NANOSECONDS));
+            Timer.builder("cag.upload.duration")
+                    .description("Time per CAG profile upload")
+                    .tag("fileType", fileType)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+            long rows = progress.getRowsProcessed();
+            long bytes = progress.getBytesRead();
+            meterRegistry.counter("cag.upload.rows", "fileType", fileType).increment(rows);
+            meterRegistry.counter("cag.upload.rows.rejected", "fileType", fileType).increment(progress.getRowsFailed());
+            meterRegistry.counter("cag.upload.bytes", "fileType", fileType).increment(bytes);
+
+            double seconds = elapsedNanos / 1e9;
+            if (seconds > 0) {
+                DistributionSummary.builder("cag.upload.rows.throughput")
+                        .description("Rows per second of a CAG profile upload")
+                        .baseUnit("rows/s")
+                        .tag("fileType", fileType)
+                        .register(meterRegistry)
+                        .record(rows / seconds);
+                DistributionSummary.builder("cag.upload.bytes.throughput")
+                        .description("Bytes per second of a CAG profile upload")
+                        .baseUnit("bytes/s")
+                        .tag("fileType", fileType)
+                        .register(meterRegistry)
+                        .record(bytes / seconds);
+            }
+        }
+    }
+}
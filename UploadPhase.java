@@ -0,0 +1,12 @@
+package com.businessadmin.util;
+
+/**
+ * Phases an upload goes through, reported by the upload job status.
+ */
+public enum UploadPhase {
+    QUEUED,
+    PARSING,
+    PERSISTING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,336 @@
+package com.businessadmin.benchmark;
+
+import com.businessadmin.entity.CAGProfile;
+import com.businessadmin.entity.CAGProfileBulkUpload;
+import com.businessadmin.repository.CAGProfileBulkUploadRepository;
+import com.businessadmin.repository.CAGProfileBulkWriter;
+import com.businessadmin.request.cagProfileDetails.CAGProfileBulkUploadDTO;
+import com.businessadmin.request.common.model.SearchInputMetaData;
+import com.businessadmin.response.cagProfileDetails.CAGProfileBulkUploadResponse;
+import com.businessadmin.service.impl.CAGProfileBulkUploadServiceImpl;
+import com.businessadmin.service.impl.ReferenceDataValidator;
+import com.businessadmin.service.impl.UploadFingerprintIndex;
+import com.businessadmin.service.impl.UploadMetrics;
+import com.businessadmin.storage.BlobStore;
+import com.businessadmin.storage.BlobWriter;
+import com.businessadmin.storage.StoredBlob;
+import com.businessadmin.util.CompiledRowValidator;
+import com.businessadmin.util.SchemaRowHandler;
+import com.businessadmin.util.SchemaUploadReader;
+import com.businessadmin.util.UploadAdmissionController;
+import com.businessadmin.util.UploadContent;
+import com.businessadmin.util.UploadFingerprint;
+import com.businessadmin.util.UploadProgress;
+import com.businessadmin.util.UploadSchema;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH benchmarks of the CAG profile bulk upload hot paths. Each stage is measured in isolation over the
+ * rows of a generated fixture, and the whole pipeline end to end against in-memory stand-ins for the
+ * repositories and the blob store. Every invocation handles the complete file, so the score is the time
+ * per file; run with the gc profiler (as {@link #main} does) to get the allocation rate per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class UploadPipelineBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"csv", "xlsx"})
+    private String format;
+
+    @Param({"false", "true"})
+    private boolean notes;
+
+    private Path fixture;
+    private List<String[]> parsedRows;
+    private List<CAGProfileBulkUploadDTO> dtos;
+    private CompiledRowValidator rowRules;
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private CAGProfileBulkUploadServiceImpl service;
+    private UploadSchema<?, CAGProfileBulkUploadDTO> uploadSchema;
+    private UploadSchema.BoundSchema<CAGProfileBulkUploadDTO> boundSchema;
+    private MethodHandle convertToEntity;
+    private SearchInputMetaData searchInputMetaData;
+    private Timestamp timestamp;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(UploadPipelineBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(CAGProfileBulkUploadServiceImpl.class, MethodHandles.lookup());
+        uploadSchema = (UploadSchema<?, CAGProfileBulkUploadDTO>) lookup
+                .findStaticGetter(CAGProfileBulkUploadServiceImpl.class, "UPLOAD_SCHEMA", UploadSchema.class).invoke();
+
+        fixture = UploadFixtures.fixture(rows, format, notes);
+        parsedRows = new ArrayList<>(rows);
+        readFixture(parsedRows::add);
+
+        rowRules = CompiledRowValidator.compile(CAGProfileBulkUploadDTO.class, uploadSchema.getProperties());
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        service = createService(validator);
+        searchInputMetaData = new SearchInputMetaData();
+        searchInputMetaData.setUserId("benchmark");
+        searchInputMetaData.setCorrelationId("benchmark");
+        timestamp = Timestamp.valueOf(LocalDateTime.now());
+
+        convertToEntity = lookup.findVirtual(CAGProfileBulkUploadServiceImpl.class, "convertToEntity",
+                MethodType.methodType(CAGProfile.class, CAGProfileBulkUploadDTO.class, SearchInputMetaData.class, Timestamp.class));
+        dtos = new ArrayList<>(rows);
+        for (String[] values : parsedRows) {
+            dtos.add(boundSchema.map(values));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    /**
+     * Reads the fixture with the streaming CSV or XLSX reader, picking the schema columns out of every row.
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException {
+        readFixture(blackhole::consume);
+    }
+
+    /**
+     * Checks every row against the compiled DTO constraints.
+     */
+    @Benchmark
+    public void validateCompiled(Blackhole blackhole) {
+        for (String[] values : parsedRows) {
+            blackhole.consume(rowRules.isValid(values));
+        }
+    }
+
+    /**
+     * Validates every row with Bean Validation, the fallback for rows failing the compiled constraints.
+     */
+    @Benchmark
+    public void validateBeanValidation(Blackhole blackhole) {
+        for (CAGProfileBulkUploadDTO dto : dtos) {
+            blackhole.consume(validator.validate(dto));
+        }
+    }
+
+    /**
+     * Maps every row to a DTO and converts it to a CAGProfile entity.
+     */
+    @Benchmark
+    public void convert(Blackhole blackhole) throws Throwable {
+        for (String[] values : parsedRows) {
+            CAGProfileBulkUploadDTO dto = boundSchema.map(values);
+            blackhole.consume((CAGProfile) convertToEntity.invoke(service, dto, searchInputMetaData, timestamp));
+        }
+    }
+
+    /**
+     * Runs the whole upload pipeline, with the repositories and the blob store replaced by in-memory stand-ins.
+     */
+    @Benchmark
+    public CAGProfileBulkUploadResponse endToEnd() throws IOException {
+        long size = Files.size(fixture);
+        try (InputStream inputStream = Files.newInputStream(fixture)) {
+            return service.processUpload(inputStream, fixture.getFileName().toString(), "application/octet-stream",
+                    null, searchInputMetaData, new UploadProgress(size));
+        }
+    }
+
+    private void readFixture(Consumer<String[]> rowConsumer) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(fixture);
+             UploadContent uploadContent = UploadContent.open(inputStream)) {
+            SchemaUploadReader.read(uploadContent, new SchemaRowHandler<CAGProfileBulkUploadDTO>() {
+                @Override
+                public UploadSchema.BoundSchema<CAGProfileBulkUploadDTO> handleHeader(String[] headers) {
+                    boundSchema = uploadSchema.bind(headers);
+                    return boundSchema;
+                }
+
+                @Override
+                public void handleRow(int rowNum, String[] values) {
+                    rowConsumer.accept(values);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wires the upload service the way Spring would, with in-memory stand-ins for everything touching the database or disk.
+     */
+    private static CAGProfileBulkUploadServiceImpl createService(Validator validator) throws ReflectiveOperationException {
+        UploadMetrics uploadMetrics = new UploadMetrics();
+        inject(uploadMetrics, "meterRegistry", new SimpleMeterRegistry());
+        uploadMetrics.registerGauges();
+
+        CAGProfileBulkUploadServiceImpl service = new CAGProfileBulkUploadServiceImpl();
+        inject(service, "cagProfileBulkUploadRepository", inMemoryRepository());
+        inject(service, "cagProfileBulkWriter", new InMemoryBulkWriter());
+        inject(service, "validator", validator);
+        inject(service, "rowValidationExecutor", ForkJoinPool.commonPool());
+        inject(service, "validationBatchSize", 1000);
+        inject(service, "persistenceEngine", "jpa");
+        inject(service, "summaryOnly", true);
+        inject(service, "dedupMemoryBudgetBytes", 64L * 1024 * 1024);
+        inject(service, "spoolDir", System.getProperty("java.io.tmpdir"));
+        inject(service, "maxUncompressedBytes", Long.MAX_VALUE);
+        inject(service, "blobStore", new DiscardingBlobStore());
+        inject(service, "uploadFingerprintIndex", new NoOpFingerprintIndex());
+        inject(service, "uploadMetrics", uploadMetrics);
+        // Budgets large enough that the benchmark never waits for admission
+        inject(service, "uploadAdmissionController", new UploadAdmissionController(Long.MAX_VALUE, Long.MAX_VALUE,
+                Long.MAX_VALUE, 0, Integer.MAX_VALUE, 0));
+        // Disabled by default, reference data checks need a database
+        inject(service, "referenceDataValidator", new ReferenceDataValidator());
+        service.start();
+        return service;
+    }
+
+    private static CAGProfileBulkUploadRepository inMemoryRepository() {
+        return (CAGProfileBulkUploadRepository) Proxy.newProxyInstance(CAGProfileBulkUploadRepository.class.getClassLoader(),
+                new Class<?>[]{CAGProfileBulkUploadRepository.class}, (proxy, method, args) -> {
+                    if ("save".equals(method.getName())) {
+                        return args[0];
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static void inject(Object target, String fieldName, Object value) throws ReflectiveOperationException {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException ex) {
+                // Declared on a superclass
+            }
+        }
+        throw new NoSuchFieldException(fieldName);
+    }
+
+    /**
+     * Counts the profiles instead of persisting them.
+     */
+    private static final class InMemoryBulkWriter extends CAGProfileBulkWriter {
+
+        private final AtomicLong saved = new AtomicLong();
+
+        @Override
+        public int saveAll(Collection<CAGProfile> cagProfiles) {
+            saved.addAndGet(cagProfiles.size());
+            return cagProfiles.size();
+        }
+
+        @Override
+        public void updateUploadStatus(Integer uploadId, String status) {
+            // The upload is not stored
+        }
+
+        @Override
+        public void renewHeartbeat(Integer uploadId) {
+            // The upload is not stored
+        }
+    }
+
+    /**
+     * Counts the bytes of the upload and keeps nothing.
+     */
+    private static final class DiscardingBlobStore implements BlobStore {
+
+        @Override
+        public BlobWriter openWriter() {
+            return new BlobWriter() {
+                private long size;
+
+                @Override
+                public void write(int b) {
+                    size++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    size += len;
+                }
+
+                @Override
+                public StoredBlob commit() {
+                    return new StoredBlob("benchmark", size, "benchmark");
+                }
+            };
+        }
+
+        @Override
+        public InputStream open(String location) {
+            throw new UnsupportedOperationException("open");
+        }
+    }
+
+    /**
+     * Never reports an earlier upload, so every invocation runs the full pipeline.
+     */
+    private static final class NoOpFingerprintIndex extends UploadFingerprintIndex {
+
+        @Override
+        public CAGProfileBulkUpload find(String userId, UploadFingerprint fingerprint, LocalDateTime now) {
+            return null;
+        }
+    }
+}
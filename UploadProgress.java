@@ -0,0 +1,107 @@
+package com.businessadmin.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe progress of a single upload. Updated by the upload pipeline and read by status requests.
+ */
+public class UploadProgress {
+
+    private final long totalBytes;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong rowsProcessed = new AtomicLong();
+    private final AtomicLong rowsFailed = new AtomicLong();
+    private volatile UploadPhase phase = UploadPhase.QUEUED;
+    private volatile long startedAt;
+
+    public UploadProgress(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Wraps the upload stream so the bytes read are counted for the ETA.
+     *
+     * @param inputStream Stream of the uploaded file
+     * @return The counting stream
+     */
+    public InputStream track(InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytesRead.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytesRead.addAndGet(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    public void setPhase(UploadPhase phase) {
+        if (phase == UploadPhase.PARSING && startedAt == 0) {
+            startedAt = System.currentTimeMillis();
+        }
+        this.phase = phase;
+    }
+
+    public UploadPhase getPhase() {
+        return phase;
+    }
+
+    public void rowProcessed() {
+        rowsProcessed.incrementAndGet();
+    }
+
+    public void rowFailed() {
+        rowsFailed.incrementAndGet();
+    }
+
+    /**
+     * @return Size of the upload in bytes, or -1 if unknown
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getRowsProcessed() {
+        return rowsProcessed.get();
+    }
+
+    public long getRowsFailed() {
+        return rowsFailed.get();
+    }
+
+    /**
+     * Estimates the remaining time from the share of the file read so far.
+     *
+     * @return Estimated seconds until the file is read, or null if no estimate is possible yet
+     */
+    public Long getEtaSeconds() {
+        if (phase == UploadPhase.COMPLETED || phase == UploadPhase.FAILED) {
+            return 0L;
+        }
+        long read = bytesRead.get();
+        if (startedAt == 0 || read == 0 || totalBytes <= 0) {
+            return null;
+        }
+        long elapsedMillis = System.currentTimeMillis() - startedAt;
+        long remainingBytes = Math.max(totalBytes - read, 0);
+        return elapsedMillis * remainingBytes / read / 1000;
+    }
+}
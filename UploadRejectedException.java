@@ -0,0 +1,21 @@
+package com.businessadmin.util;
+
+/**
+ * Thrown when an upload is not admitted for processing. The status is the HTTP status to answer with.
+ */
+public class UploadRejectedException extends RuntimeException {
+
+    public static final int TOO_MANY_REQUESTS = 429;
+    public static final int SERVICE_UNAVAILABLE = 503;
+
+    private final int status;
+
+    public UploadRejectedException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
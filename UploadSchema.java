@@ -0,0 +1,299 @@
+package com.businessadmin.util;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Declarative description of an upload file: the header name of every column and the DTO property it is
+ * bound to. The accessors writing the properties are compiled once per schema with LambdaMetafactory,
+ * and the position of every column is resolved once per file from its header row, so binding a row
+ * costs one array lookup and one direct call per column, no reflection.
+ *
+ * @param <B> Type the values are written to, the DTO itself or its builder
+ * @param <T> Type of the DTO
+ */
+public final class UploadSchema<B, T> {
+
+    private final Supplier<B> factory;
+    private final Function<B, T> finisher;
+    private final List<String> headers;
+    private final List<String> properties;
+    private final BiConsumer<B, String>[] binders;
+
+    private UploadSchema(Supplier<B> factory, Function<B, T> finisher, List<String> headers, List<String> properties,
+                         BiConsumer<B, String>[] binders) {
+        this.factory = factory;
+        this.finisher = finisher;
+        this.headers = headers;
+        this.properties = properties;
+        this.binders = binders;
+    }
+
+    /**
+     * Starts a schema for a DTO with setters.
+     *
+     * @param type    DTO class
+     * @param factory Creates an empty DTO
+     * @return The schema builder
+     */
+    public static <T> Builder<T, T> forBean(Class<T> type, Supplier<T> factory) {
+        return new Builder<>(type, factory, Function.identity());
+    }
+
+    /**
+     * Starts a schema for a DTO created through a builder with fluent property methods, such as a Lombok builder.
+     *
+     * @param builderType Builder class
+     * @param factory     Creates a new builder
+     * @param finisher    Builds the DTO
+     * @return The schema builder
+     */
+    public static <B, T> Builder<B, T> forBuilder(Class<B> builderType, Supplier<B> factory, Function<B, T> finisher) {
+        return new Builder<>(builderType, factory, finisher);
+    }
+
+    /**
+     * @return Lower case header names, in schema order
+     */
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return DTO properties, in schema order
+     */
+    public List<String> getProperties() {
+        return properties;
+    }
+
+    public int width() {
+        return headers.size();
+    }
+
+    /**
+     * Positions of the columns bound to the given properties, in the values rows are handed over with.
+     *
+     * @param properties DTO properties
+     * @return The column index of every property
+     */
+    public int[] indexesOf(String... properties) {
+        int[] indexes = new int[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            indexes[i] = this.properties.indexOf(properties[i]);
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException("No column is bound to property " + properties[i]);
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Resolves the position of every schema column in the header row of a file. Header names are matched
+     * ignoring case and surrounding blanks; extra columns are ignored and the order doesn't matter.
+     *
+     * @param headerRow Header row of the file
+     * @return The schema bound to the file's column positions
+     * @throws IllegalArgumentException If columns of the schema are missing
+     */
+    public BoundSchema<T> bind(String[] headerRow) {
+        int[] columnIndexes = new int[headers.size()];
+        List<String> missingHeaders = new ArrayList<>();
+        for (int column = 0; column < headers.size(); column++) {
+            columnIndexes[column] = -1;
+            for (int index = 0; index < headerRow.length; index++) {
+                if (headerRow[index] != null && headers.get(column).equals(headerRow[index].trim().toLowerCase(Locale.ROOT))) {
+                    columnIndexes[column] = index;
+                    break;
+                }
+            }
+            if (columnIndexes[column] < 0) {
+                missingHeaders.add(headers.get(column));
+            }
+        }
+        if (!missingHeaders.isEmpty()) {
+            throw new IllegalArgumentException("Missing or incorrect headers: " + String.join(", ", missingHeaders));
+        }
+        return new BoundSchema<>(this, columnIndexes);
+    }
+
+    /**
+     * Builds a DTO from values in schema order.
+     */
+    private T map(String[] values) {
+        B target = factory.get();
+        for (int column = 0; column < binders.length; column++) {
+            binders[column].accept(target, values[column]);
+        }
+        return finisher.apply(target);
+    }
+
+    /**
+     * A schema bound to the column positions of one file.
+     *
+     * @param <T> Type of the DTO
+     */
+    public static final class BoundSchema<T> {
+
+        private final UploadSchema<?, T> schema;
+        private final int[] columnIndexes;
+
+        private BoundSchema(UploadSchema<?, T> schema, int[] columnIndexes) {
+            this.schema = schema;
+            this.columnIndexes = columnIndexes;
+        }
+
+        /**
+         * Picks the schema columns out of a file row.
+         *
+         * @param row Values of the row in file order
+         * @return The values in schema order, missing cells as empty strings
+         */
+        public String[] project(String[] row) {
+            String[] values = new String[columnIndexes.length];
+            for (int column = 0; column < columnIndexes.length; column++) {
+                int index = columnIndexes[column];
+                values[column] = index < row.length ? row[index] : "";
+            }
+            return values;
+        }
+
+        /**
+         * Picks the schema columns out of the current CSV record, only materializing those fields.
+         *
+         * @param tokenizer Tokenizer positioned on a record
+         * @return The values in schema order
+         */
+        public String[] project(CsvTokenizer tokenizer) {
+            String[] values = new String[columnIndexes.length];
+            for (int column = 0; column < columnIndexes.length; column++) {
+                values[column] = tokenizer.getField(columnIndexes[column]);
+            }
+            return values;
+        }
+
+        /**
+         * Builds a DTO from projected values.
+         *
+         * @param values Values in schema order, as returned by project()
+         * @return The DTO
+         */
+        public T map(String[] values) {
+            return schema.map(values);
+        }
+
+        public UploadSchema<?, T> getSchema() {
+            return schema;
+        }
+    }
+
+    /**
+     * Collects the columns of a schema.
+     */
+    public static final class Builder<B, T> {
+
+        private final Class<B> targetType;
+        private final Supplier<B> factory;
+        private final Function<B, T> finisher;
+        private final List<String> headers = new ArrayList<>();
+        private final List<String> properties = new ArrayList<>();
+
+        private Builder(Class<B> targetType, Supplier<B> factory, Function<B, T> finisher) {
+            this.targetType = targetType;
+            this.factory = factory;
+            this.finisher = finisher;
+        }
+
+        /**
+         * Adds a column.
+         *
+         * @param header   Header name of the column, matched ignoring case
+         * @param property DTO property the column is bound to, written through its setter or fluent builder method
+         * @return This builder
+         */
+        public Builder<B, T> column(String header, String property) {
+            headers.add(header.trim().toLowerCase(Locale.ROOT));
+            properties.add(property);
+            return this;
+        }
+
+        /**
+         * Compiles the property accessors.
+         *
+         * @return The schema
+         * @throws IllegalArgumentException If a property has no String setter or builder method
+         */
+        @SuppressWarnings("unchecked")
+        public UploadSchema<B, T> build() {
+            BiConsumer<B, String>[] binders = new BiConsumer[properties.size()];
+            for (int column = 0; column < properties.size(); column++) {
+                binders[column] = compileBinder(targetType, properties.get(column));
+            }
+            return new UploadSchema<>(factory, finisher, Collections.unmodifiableList(new ArrayList<>(headers)),
+                    Collections.unmodifiableList(new ArrayList<>(properties)), binders);
+        }
+
+        private static <B> BiConsumer<B, String> compileBinder(Class<B> targetType, String property) {
+            Method method = findWriteMethod(targetType, property);
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle handle = lookup.unreflect(method);
+                CallSite callSite = LambdaMetafactory.metafactory(lookup, "accept",
+                        MethodType.methodType(BiConsumer.class),
+                        MethodType.methodType(void.class, Object.class, Object.class),
+                        handle,
+                        MethodType.methodType(void.class, targetType, String.class));
+                @SuppressWarnings("unchecked")
+                BiConsumer<B, String> binder = (BiConsumer<B, String>) callSite.getTarget().invoke();
+                return binder;
+            } catch (Throwable ex) {
+                // The DTO isn't visible to this class loader, fall back to the method handle
+                return methodHandleBinder(method, property);
+            }
+        }
+
+        private static <B> BiConsumer<B, String> methodHandleBinder(Method method, String property) {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().unreflect(method);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalArgumentException("Property " + property + " is not accessible", ex);
+            }
+            return (target, value) -> {
+                try {
+                    handle.invoke(target, value);
+                } catch (RuntimeException | Error ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    throw new IllegalStateException("Unable to set " + property, ex);
+                }
+            };
+        }
+
+        private static Method findWriteMethod(Class<?> targetType, String property) {
+            String setter = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+            for (String name : new String[]{setter, property}) {
+                try {
+                    Method method = targetType.getMethod(name, String.class);
+                    if (!Modifier.isStatic(method.getModifiers())) {
+                        return method;
+                    }
+                } catch (NoSuchMethodException ex) {
+                    // Try the next naming convention
+                }
+            }
+            throw new IllegalArgumentException("No setter or builder method for property " + property + " on " + targetType.getName());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+-- Staging table of the set based CAG profile bulk upload engine (CAGProfileStagingLoader).
+-- Rows are written and deleted within the load transaction, keyed by a random load_id.
+CREATE TABLE IF NOT EXISTS cag_profile_staging (
+    load_id              VARCHAR(36)   NOT NULL,
+    row_num              INTEGER       NOT NULL,
+    cag_profile_id       BIGINT        NOT NULL,
+    cag_profile_notes_id BIGINT,
+    carrier_id           VARCHAR(255),
+    account_id           VARCHAR(255),
+    group_id             VARCHAR(255),
+    plan_type            VARCHAR(255),
+    mail_order_pharmacy  VARCHAR(255),
+    prospect_client      VARCHAR(255),
+    edit_member          VARCHAR(255),
+    entitlements         VARCHAR(255),
+    access_error_message VARCHAR(4000),
+    notes                VARCHAR(4000)
+);
+
+CREATE INDEX IF NOT EXISTS idx_cag_profile_staging_load_id ON cag_profile_staging (load_id);
@@ -0,0 +1,3 @@
+-- Lookup of earlier uploads of the same file by the same user (UploadFingerprintIndex).
+CREATE INDEX IF NOT EXISTS idx_cag_profile_bulk_upload_fingerprint
+    ON cag_profile_bulk_upload (user_id_created, file_hash, file_size);
@@ -0,0 +1,3 @@
+-- Heartbeat of an upload being saved with checkpoints, renewed with every committed chunk.
+-- resumeUpload() only claims an upload whose heartbeat is older than the checkpoint lease.
+ALTER TABLE cag_profile_bulk_upload ADD COLUMN IF NOT EXISTS heartbeat_at TIMESTAMP;
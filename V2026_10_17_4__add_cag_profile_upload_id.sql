@@ -0,0 +1,5 @@
+-- Upload that created a profile, set by every bulk upload engine. Rolling back or deleting an upload,
+-- paging its profiles and exporting them all select on it, which only stays set based with the index.
+ALTER TABLE cag_profile ADD COLUMN IF NOT EXISTS upload_id INTEGER;
+
+CREATE INDEX IF NOT EXISTS idx_cag_profile_upload_id ON cag_profile (upload_id);
@@ -0,0 +1,3 @@
+-- Whether an upload was saved in checkpointed chunks. Only those can be continued by resumeUpload(),
+-- uploads saved in a single transaction have no partial rows to continue from.
+ALTER TABLE cag_profile_bulk_upload ADD COLUMN IF NOT EXISTS checkpointed BOOLEAN NOT NULL DEFAULT FALSE;